@@ -0,0 +1,62 @@
+package os.json.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which adds
+ * <code>gc.alloc.rate.norm</code>, the bytes allocated per operation.
+ *
+ * <pre>
+ * Bench [pattern...]            benchmarks matching the patterns, all by default
+ * Bench -scaling [pattern...]   ScalingBenchmark on 1, 2, 4... threads
+ * </pre>
+ */
+public final class Bench {
+
+	private Bench() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean scaling = false;
+		List<String> patterns = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("-scaling")) {
+				scaling = true;
+			} else {
+				patterns.add(arg);
+			}
+		}
+		if (!scaling) {
+			ChainedOptionsBuilder options = options(patterns, ".*Benchmark");
+			options.exclude(ScalingBenchmark.class.getSimpleName());
+			new Runner(options.build()).run();
+			return;
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+			ChainedOptionsBuilder options = options(patterns, ScalingBenchmark.class.getSimpleName());
+			options.threads(threads).result("scaling-" + threads + ".txt");
+			new Runner(options.build()).run();
+			if (threads == processors) {
+				break;
+			}
+		}
+	}
+
+	private static ChainedOptionsBuilder options(List<String> patterns, String fallback) {
+		ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+		if (patterns.isEmpty()) {
+			options.include(fallback);
+		}
+		for (String pattern : patterns) {
+			options.include(pattern);
+		}
+		return options;
+	}
+}
@@ -0,0 +1,191 @@
+package os.json.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Documents the benchmarks run on: the files in <code>data/</code> and
+ * generated arrays of a given kind and approximate size. Generation is
+ * deterministic, large documents are written to files once and reused.
+ */
+public final class Corpus {
+
+	public static final String STRINGS = "strings";
+	public static final String NUMBERS = "numbers";
+	public static final String NESTED  = "nested";
+	public static final String WIDE    = "wide";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String[] WORDS = {
+		"lorem", "ipsum", "dolor", "sit", "amet", "\u00e9t\u00e9", "\u20ac", "quote\\\"d", "line\\n", "tab\\t", "\\u00e9"
+	};
+
+	private Corpus() {
+	}
+
+	/**
+	 * Reads one of the files in <code>data/</code>, e.g. "test-user.json".
+	 */
+	public static byte[] data(String name) throws IOException {
+		InputStream in = Corpus.class.getResourceAsStream("/" + name);
+		if (in == null) {
+			in = new java.io.FileInputStream(new File(new File(System.getProperty("corpus.data", "../data")), name));
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			for (int read; (read = in.read(chunk)) > 0;) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Generates a document in memory.
+	 */
+	public static byte[] generate(String kind, long size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(size + 1024, Integer.MAX_VALUE - 8));
+		write(kind, size, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Generates a document into a file under <code>tmp/corpus</code>,
+	 * an existing file is reused.
+	 */
+	public static File file(String kind, long size) throws IOException {
+		File dir = new File(System.getProperty("corpus.dir", "tmp/corpus"));
+		dir.mkdirs();
+		File file = new File(dir, kind + "-" + size + ".json");
+		if (!file.exists()) {
+			File partial = new File(dir, file.getName() + ".part");
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), 1 << 16);
+			try {
+				write(kind, size, out);
+			} finally {
+				out.close();
+			}
+			if (!partial.renameTo(file)) {
+				throw new IOException("Can't create " + file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Parses sizes like "1KB", "64KB", "16MB" or "500MB".
+	 */
+	public static long size(String size) {
+		String unit = size.replaceAll("[0-9]", "").toUpperCase();
+		long value = Long.parseLong(size.replaceAll("[^0-9]", ""));
+		if (unit.equals("KB")) {
+			return value << 10;
+		} else if (unit.equals("MB")) {
+			return value << 20;
+		} else if (unit.equals("GB")) {
+			return value << 30;
+		}
+		return value;
+	}
+
+	/**
+	 * Writes an array of generated elements until it is
+	 * at least <code>size</code> bytes long.
+	 */
+	public static void write(String kind, long size, OutputStream out) throws IOException {
+		Random random = new Random(42);
+		StringBuilder element = new StringBuilder();
+		long written = 1;
+		out.write('[');
+		for (int i = 0; written < size - 1; i++) {
+			element.setLength(0);
+			if (i > 0) {
+				element.append(',');
+			}
+			if (kind.equals(STRINGS)) {
+				strings(element, i, random);
+			} else if (kind.equals(NUMBERS)) {
+				numbers(element, random);
+			} else if (kind.equals(NESTED)) {
+				nested(element, i, random);
+			} else if (kind.equals(WIDE)) {
+				wide(element, random);
+			} else {
+				throw new IllegalArgumentException("Unknown corpus " + kind);
+			}
+			byte[] bytes = element.toString().getBytes(UTF8);
+			out.write(bytes);
+			written += bytes.length;
+		}
+		out.write(']');
+	}
+
+	private static void strings(StringBuilder out, int i, Random random) {
+		out.append("{\"id\":\"").append(Long.toHexString(random.nextLong())).append("\",\"text\":\"");
+		int words = 5 + random.nextInt(60);
+		for (int w = 0; w < words; w++) {
+			out.append(w > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		out.append("\",\"tag\":\"").append(i % 2 == 0 ? "FB" : "VK").append("\"}");
+	}
+
+	private static void numbers(StringBuilder out, Random random) {
+		out.append('[');
+		for (int n = 0; n < 16; n++) {
+			if (n > 0) {
+				out.append(',');
+			}
+			switch (n % 4) {
+				case 0:
+					out.append(random.nextInt(1000));
+					break;
+				case 1:
+					out.append(random.nextLong());
+					break;
+				case 2:
+					out.append(random.nextDouble() * 1000);
+					break;
+				default:
+					out.append(random.nextInt(100000)).append('.').append(random.nextInt(100)).append("e-3");
+			}
+		}
+		out.append(']');
+	}
+
+	private static void nested(StringBuilder out, int i, Random random) {
+		int depth = 16 + random.nextInt(48);
+		for (int d = 0; d < depth; d++) {
+			out.append(d % 2 == 0 ? "{\"child\":" : "[");
+		}
+		out.append(i);
+		for (int d = depth - 1; d >= 0; d--) {
+			out.append(d % 2 == 0 ? "}" : "]");
+		}
+	}
+
+	private static void wide(StringBuilder out, Random random) {
+		out.append('{');
+		for (int f = 0; f < 200; f++) {
+			if (f > 0) {
+				out.append(',');
+			}
+			out.append("\"field").append(f).append("\":");
+			if (f % 3 == 0) {
+				out.append('"').append(Integer.toString(random.nextInt(), 36)).append('"');
+			} else {
+				out.append(random.nextInt(1000000));
+			}
+		}
+		out.append('}');
+	}
+}
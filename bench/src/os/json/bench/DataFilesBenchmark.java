@@ -0,0 +1,64 @@
+package os.json.bench;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import os.json.JSON;
+import os.json.JsonParseError;
+
+/**
+ * Round trips of the small documents in <code>data/</code>, where the
+ * fixed cost of a call matters more than the scanning speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataFilesBenchmark {
+
+	@Param({"test-basic.json", "test-complex.json", "test-user.json"})
+	public String file;
+
+	private byte[] bytes;
+	private String string;
+	private Object document;
+
+	@Setup
+	public void setup() throws Exception {
+		bytes = Corpus.data(file);
+		string = new String(bytes, Charset.forName("UTF-8"));
+		document = JSON.decode(string);
+	}
+
+	@Benchmark
+	public Object decode(Bytes counter) throws JsonParseError {
+		counter.bytes += bytes.length;
+		return JSON.decode(string);
+	}
+
+	@Benchmark
+	public Object decodeBytes(Bytes counter) throws JsonParseError {
+		counter.bytes += bytes.length;
+		return JSON.decode(bytes);
+	}
+
+	@Benchmark
+	public String encode(Bytes counter) {
+		counter.bytes += bytes.length;
+		return JSON.encode(document);
+	}
+}
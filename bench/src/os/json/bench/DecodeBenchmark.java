@@ -0,0 +1,59 @@
+package os.json.bench;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import os.json.JSON;
+import os.json.JsonParseError;
+
+/**
+ * Decoding of generated documents held in memory, as strings and as
+ * UTF-8 bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+	@Param({"strings", "numbers", "nested", "wide"})
+	public String kind;
+
+	@Param({"1KB", "64KB", "1MB", "16MB"})
+	public String size;
+
+	private byte[] bytes;
+	private String string;
+
+	@Setup
+	public void setup() throws Exception {
+		bytes = Corpus.generate(kind, Corpus.size(size));
+		string = new String(bytes, Charset.forName("UTF-8"));
+	}
+
+	@Benchmark
+	public Object decodeString(Bytes counter) throws JsonParseError {
+		counter.bytes += bytes.length;
+		return JSON.decode(string);
+	}
+
+	@Benchmark
+	public Object decodeBytes(Bytes counter) throws JsonParseError {
+		counter.bytes += bytes.length;
+		return JSON.decode(bytes);
+	}
+}
@@ -0,0 +1,70 @@
+package os.json.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import os.json.JSON;
+
+/**
+ * Encoding of decoded generated documents, to a string and to a stream
+ * which discards what it is given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+	@Param({"strings", "numbers", "nested", "wide"})
+	public String kind;
+
+	@Param({"1KB", "64KB", "1MB", "16MB"})
+	public String size;
+
+	private Object document;
+	private long length;
+
+	@Setup
+	public void setup() throws Exception {
+		byte[] bytes = Corpus.generate(kind, Corpus.size(size));
+		document = JSON.decode(bytes);
+		length = bytes.length;
+	}
+
+	@Benchmark
+	public String encodeString(Bytes counter) {
+		counter.bytes += length;
+		return JSON.encode(document);
+	}
+
+	@Benchmark
+	public void encodeStream(Bytes counter) throws Exception {
+		counter.bytes += length;
+		JSON.encode(document, Null.STREAM);
+	}
+
+	static final class Null extends java.io.OutputStream {
+		static final Null STREAM = new Null();
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package os.json.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import os.json.JSON;
+
+/**
+ * Decoding of files too large to be held as strings, read as a stream and
+ * mapped into memory. Each run takes seconds, so they are timed one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LargeFileBenchmark {
+
+	@Param({"strings", "numbers", "nested", "wide"})
+	public String kind;
+
+	@Param({"100MB", "500MB"})
+	public String size;
+
+	private File file;
+
+	@Setup
+	public void setup() throws Exception {
+		file = Corpus.file(kind, Corpus.size(size));
+	}
+
+	@Benchmark
+	public Object decodeFile(Bytes counter) throws Exception {
+		counter.bytes += file.length();
+		return JSON.decode(file);
+	}
+
+	@Benchmark
+	public Object decodeMapped(Bytes counter) throws Exception {
+		counter.bytes += file.length();
+		return JSON.decodeMapped(file);
+	}
+}
@@ -0,0 +1,60 @@
+package os.json.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import os.json.JsonMapper;
+import os.json.JsonParseError;
+
+/**
+ * Decoding and encoding with one mapper shared by all threads. Run by
+ * <code>Bench -scaling</code> with 1, 2, 4... threads up to the number of
+ * processors; throughput should grow with the threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+
+	@Param({"strings", "wide"})
+	public String kind;
+
+	@Param({"64KB"})
+	public String size;
+
+	private final JsonMapper mapper = new JsonMapper();
+	private byte[] bytes;
+	private Object document;
+
+	@Setup
+	public void setup() throws Exception {
+		bytes = Corpus.generate(kind, Corpus.size(size));
+		document = mapper.decode(bytes, Object.class);
+	}
+
+	@Benchmark
+	public Object decode(Bytes counter) throws JsonParseError {
+		counter.bytes += bytes.length;
+		return mapper.decode(bytes, Object.class);
+	}
+
+	@Benchmark
+	public String encode(Bytes counter) {
+		counter.bytes += bytes.length;
+		return mapper.encode(document);
+	}
+}
@@ -0,0 +1,259 @@
+package os.json.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a <code>JsonBinding</code> for every class annotated with
+ * <code>@JsonBean</code>, so os-json can encode and decode it without
+ * reflection. Properties are public getters, with an optional setter of
+ * the same type. They are ordered by <code>@Index</code>, and getters
+ * marked with <code>@JsonIgnore</code> are not written.
+ *
+ * Annotations are matched by name, the processor itself does not depend
+ * on os-json or os-utils.
+ */
+@SupportedAnnotationTypes("os.json.annotations.JsonBean")
+public class JsonBindingProcessor extends AbstractProcessor {
+
+	private static final String IGNORE = "os.json.annotations.JsonIgnore";
+	private static final String INDEX = "os.utils.Types.Property.Index";
+	private static final String SUFFIX = "_JsonBinding";
+
+	private static final class Property {
+		String name;
+		ExecutableElement getter;
+		ExecutableElement setter;
+		TypeMirror type;
+		int index = Integer.MAX_VALUE;
+		boolean ignored;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : round.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS) {
+					error(element, "@JsonBean can only be used on classes");
+					continue;
+				}
+				TypeElement bean = (TypeElement) element;
+				if (check(bean)) {
+					try {
+						generate(bean);
+					} catch (IOException e) {
+						error(bean, "Can't write the binding: " + e.getMessage());
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean check(TypeElement bean) {
+		for (Element e = bean; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				error(bean, "@JsonBean classes can't be private");
+				return false;
+			}
+			if (e.getEnclosingElement() instanceof TypeElement && e.getKind() == ElementKind.CLASS
+					&& !e.getModifiers().contains(Modifier.STATIC)) {
+				error(bean, "@JsonBean classes can't be inner classes");
+				return false;
+			}
+		}
+		if (bean.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(bean, "@JsonBean classes can't be abstract");
+			return false;
+		}
+		for (Element member : bean.getEnclosedElements()) {
+			if (member.getKind() == ElementKind.CONSTRUCTOR
+					&& ((ExecutableElement) member).getParameters().isEmpty()
+					&& !member.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+		error(bean, "@JsonBean classes need a constructor without arguments");
+		return false;
+	}
+
+	private List<Property> properties(TypeElement bean) {
+		Elements elements = processingEnv.getElementUtils();
+		Types types = processingEnv.getTypeUtils();
+		Map<String, ExecutableElement> setters = new HashMap<String, ExecutableElement>();
+		List<ExecutableElement> getters = new ArrayList<ExecutableElement>();
+		for (Element member : elements.getAllMembers(bean)) {
+			if (member.getKind() != ElementKind.METHOD
+					|| !member.getModifiers().contains(Modifier.PUBLIC)
+					|| member.getModifiers().contains(Modifier.STATIC)
+					|| ((TypeElement) member.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+				continue;
+			}
+			ExecutableElement method = (ExecutableElement) member;
+			String name = method.getSimpleName().toString();
+			if (name.startsWith("set") && name.length() > 3 && method.getParameters().size() == 1) {
+				TypeMirror type = types.erasure(method.getParameters().get(0).asType());
+				setters.put(name.substring(3) + ":" + type, method);
+			} else if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) {
+				if ((name.startsWith("get") && name.length() > 3)
+						|| (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN)) {
+					getters.add(method);
+				}
+			}
+		}
+		List<Property> properties = new ArrayList<Property>();
+		for (ExecutableElement getter : getters) {
+			String name = getter.getSimpleName().toString();
+			String suffix = name.substring(name.startsWith("is") ? 2 : 3);
+			Property property = new Property();
+			property.name = Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+			property.getter = getter;
+			property.type = getter.getReturnType();
+			property.setter = setters.get(suffix + ":" + types.erasure(property.type));
+			for (AnnotationMirror mirror : elements.getAllAnnotationMirrors(getter)) {
+				String annotation = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+				if (annotation.equals(IGNORE)) {
+					property.ignored = true;
+				} else if (annotation.equals(INDEX)) {
+					for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : mirror.getElementValues().entrySet()) {
+						if (value.getKey().getSimpleName().contentEquals("value")) {
+							property.index = ((Number) value.getValue().getValue()).intValue();
+						}
+					}
+				}
+			}
+			properties.add(property);
+		}
+		// stable, properties without an index keep their order at the end
+		Collections.sort(properties, new Comparator<Property>() {
+			@Override
+			public int compare(Property a, Property b) {
+				return a.index < b.index ? -1 : a.index == b.index ? 0 : 1;
+			}
+		});
+		return properties;
+	}
+
+	private void generate(TypeElement bean) throws IOException {
+		Elements elements = processingEnv.getElementUtils();
+		Types types = processingEnv.getTypeUtils();
+		PackageElement pkg = elements.getPackageOf(bean);
+		String binary = elements.getBinaryName(bean).toString();
+		String simple = (pkg.isUnnamed() ? binary : binary.substring(pkg.getQualifiedName().length() + 1)) + SUFFIX;
+		String type = bean.getQualifiedName().toString();
+		List<Property> properties = properties(bean);
+
+		PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(binary + SUFFIX, bean).openWriter());
+		try {
+			if (!pkg.isUnnamed()) {
+				out.println("package " + pkg.getQualifiedName() + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * Generated by os-json from " + type + ", do not edit.");
+			out.println(" */");
+			out.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+			out.println("public final class " + simple + " implements os.json.JsonBinding<" + type + "> {");
+			out.println();
+			StringBuilder names = new StringBuilder();
+			StringBuilder classes = new StringBuilder();
+			StringBuilder ignored = new StringBuilder();
+			for (Property property : properties) {
+				String separator = names.length() > 0 ? ", " : "";
+				names.append(separator).append('"').append(property.name).append('"');
+				classes.append(separator).append(types.erasure(property.type)).append(".class");
+				ignored.append(separator).append(property.ignored);
+			}
+			out.println("\tprivate static final String[] NAMES = { " + names + " };");
+			out.println("\tprivate static final Class<?>[] TYPES = { " + classes + " };");
+			out.println("\tprivate static final boolean[] IGNORED = { " + ignored + " };");
+			out.println();
+			out.println("\tpublic String[] names() {");
+			out.println("\t\treturn NAMES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Class<?>[] types() {");
+			out.println("\t\treturn TYPES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic boolean[] ignored() {");
+			out.println("\t\treturn IGNORED.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic " + type + " create() {");
+			out.println("\t\treturn new " + type + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Object get(" + type + " bean, int index) {");
+			out.println("\t\tswitch (index) {");
+			for (int i = 0; i < properties.size(); i++) {
+				out.println("\t\t\tcase " + i + ":");
+				out.println("\t\t\t\treturn bean." + properties.get(i).getter.getSimpleName() + "();");
+			}
+			out.println("\t\t\tdefault:");
+			out.println("\t\t\t\tthrow new IndexOutOfBoundsException(String.valueOf(index));");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic void set(" + type + " bean, int index, Object value) {");
+			out.println("\t\tswitch (index) {");
+			for (int i = 0; i < properties.size(); i++) {
+				Property property = properties.get(i);
+				out.println("\t\t\tcase " + i + ":");
+				if (property.setter != null) {
+					out.println("\t\t\t\tbean." + property.setter.getSimpleName() + "((" + boxed(property.type) + ") value);");
+				}
+				out.println("\t\t\t\treturn;");
+			}
+			out.println("\t\t\tdefault:");
+			out.println("\t\t\t\tthrow new IndexOutOfBoundsException(String.valueOf(index));");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	private String boxed(TypeMirror type) {
+		Types types = processingEnv.getTypeUtils();
+		if (type.getKind().isPrimitive()) {
+			return types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName().toString();
+		}
+		return types.erasure(type).toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
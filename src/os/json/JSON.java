@@ -32,12 +32,19 @@
 
 package os.json;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class JSON {
 	public static interface Hack {
@@ -45,29 +52,14 @@ public class JSON {
 		public Object execute(String source);
 	}
 	
-	public static Map<String, Hack> hacks = new LinkedHashMap<String, JSON.Hack>();
-	static {
-		try {
-			@SuppressWarnings("rawtypes")
-			final Class BsonIdClass = Class.forName("os.bson.BsonId");
-			hacks.put("BsonId", new Hack() {
-				@Override
-				public String key() {
-					return "BsonId";
-				}
-				
-				@SuppressWarnings("unchecked")
-				@Override
-				public Object execute(String source) {
-					try {
-						return BsonIdClass.getConstructor(new Class[]{String.class}).newInstance(source);
-					} catch (Exception e) {
-						return source;
-					}
-				}
-			});
-		} catch (ClassNotFoundException e) {
-		}
+	// shared mappers for each combination of formated and commented
+	private static final JsonMapper[] mappers = {
+		new JsonMapper(false,false), new JsonMapper(false,true),
+		new JsonMapper(true,false), new JsonMapper(true,true)
+	};
+	
+	private static JsonMapper mapper(Boolean formated, Boolean commented){
+		return mappers[(Boolean.TRUE.equals(formated) ? 2 : 0) + (Boolean.TRUE.equals(commented) ? 1 : 0)];
 	}
 	
 	public static <T> T decode(String document) throws JsonParseError{
@@ -78,33 +70,185 @@ public class JSON {
 		return decode(file,null);
 	}
 	
+	/**
+	 * Decodes a UTF-8 encoded file.
+	 */
 	public static <T> T decode(File file, Class<T> type) throws java.io.IOException, JsonParseError{
-	    byte[] buffer = new byte[(int) file.length()];
-	    BufferedInputStream f = null;
-	    try {
-	        f = new BufferedInputStream(new FileInputStream(file));
-	        f.read(buffer);
-	    } finally {
-	        if (f != null) try { f.close(); } catch (IOException ignored) { }
-	    }
-	    return decode(new String(buffer),type);
+		InputStream stream = new FileInputStream(file);
+		try {
+			return decode(stream,type);
+		} finally {
+			try { stream.close(); } catch (IOException ignored) { }
+		}
+	}
+	
+	/**
+	 * Decodes a UTF-8 encoded file without blocking: the file is read
+	 * ahead in chunks while a pool thread parses what has arrived.
+	 */
+	public static <T> CompletableFuture<T> decodeAsync(Path file, Class<T> type){
+		return JsonAsyncFiles.decode(file,type,mapper(false,false),ForkJoinPool.commonPool());
+	}
+	
+	public static <T> T decodeMapped(File file) throws IOException, JsonParseError{
+		return decodeMapped(file,null);
+	}
+	
+	/**
+	 * Decodes a UTF-8 encoded file by mapping it into memory instead of
+	 * reading it, large files are parsed in place segment by segment.
+	 */
+	public static <T> T decodeMapped(File file, Class<T> type) throws IOException, JsonParseError{
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			return (new JsonDecoder().decode(new JsonReader(channel),type));
+		} finally {
+			try { channel.close(); } catch (IOException ignored) { }
+		}
+	}
+	
+	public static <T> T decode(byte[] document) throws JsonParseError{
+		return decode(document,null);
+	}
+	
+	/**
+	 * Decodes UTF-8 encoded bytes without converting them to a string first.
+	 */
+	public static <T> T decode(byte[] document, Class<T> type) throws JsonParseError{
+		return mapper(false,false).decode(document,type);
+	}
+	
+	public static <T> T decode(ByteBuffer document) throws JsonParseError{
+		return decode(document,null);
+	}
+	
+	/**
+	 * Decodes the remaining UTF-8 encoded bytes of the buffer.
+	 */
+	public static <T> T decode(ByteBuffer document, Class<T> type) throws JsonParseError{
+		return mapper(false,false).decode(document,type);
+	}
+	
+	public static <T> T decode(Reader reader) throws IOException, JsonParseError{
+		return decode(reader,null);
+	}
+	
+	public static <T> T decode(Reader reader, Class<T> type) throws IOException, JsonParseError{
+		return mapper(false,false).decode(reader,type);
+	}
+	
+	public static <T> T decode(InputStream stream) throws IOException, JsonParseError{
+		return decode(stream,null);
+	}
+	
+	/**
+	 * Decodes UTF-8 encoded input.
+	 */
+	public static <T> T decode(InputStream stream, Class<T> type) throws IOException, JsonParseError{
+		return mapper(false,false).decode(stream,type);
 	}
 	
 	public static <T> T decode(String document, Class<T> type) throws JsonParseError{
-		return (new JsonDecoder().decode(document,type));
+		return mapper(false,false).decode(document,type);
 	}
 	
+	/**
+	 * Decodes only the value a JSON Pointer like <code>/user/ids/0</code>
+	 * refers to, null if the document has no such value. See
+	 * <code>JsonPaths</code> to extract several values in one pass.
+	 */
+	public static <T> T extract(String document, String pointer, Class<T> type) throws JsonParseError{
+		return type(new JsonPaths(new String[]{pointer},new Class<?>[]{type}).extract(document)[0]);
+	}
+	public static <T> T extract(byte[] document, String pointer, Class<T> type) throws JsonParseError{
+		return type(new JsonPaths(new String[]{pointer},new Class<?>[]{type}).extract(document)[0]);
+	}
+	public static <T> T extract(InputStream stream, String pointer, Class<T> type) throws IOException, JsonParseError{
+		return type(new JsonPaths(new String[]{pointer},new Class<?>[]{type}).extract(new JsonReader(stream))[0]);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T type(Object value){
+		return (T) value;
+	}
+	
+	/**
+	 * Stream of the elements of a file holding one large array, each
+	 * decoded as the given type. The file is scanned for element
+	 * boundaries first, so a <code>parallel()</code> stream decodes
+	 * chunks of the array on all cores. Close the stream to close the
+	 * file.
+	 */
+	public static <T> Stream<T> stream(File file, Class<T> type) throws IOException, JsonParseError{
+		return JsonElements.stream(file,type);
+	}
+	
+	/**
+	 * Decodes a JSON Lines file, one value per line, in parallel and in
+	 * the order of the lines. A malformed line fails the stream, see
+	 * <code>JsonLines</code> to handle them one by one.
+	 */
+	public static <T> Stream<T> decodeLines(Path file, Class<T> type) throws IOException{
+		return decodeLines(file,type,null);
+	}
+	public static <T> Stream<T> decodeLines(Path file, Class<T> type, JsonLines.Errors errors) throws IOException{
+		JsonLines<T> lines = new JsonLines<T>(type);
+		lines.setErrors(errors);
+		return lines.stream(file);
+	}
+	
+	public static <T> Stream<T> decodeLines(InputStream stream, Class<T> type){
+		return decodeLines(stream,type,null);
+	}
+	public static <T> Stream<T> decodeLines(InputStream stream, Class<T> type, JsonLines.Errors errors){
+		JsonLines<T> lines = new JsonLines<T>(type);
+		lines.setErrors(errors);
+		return lines.stream(stream);
+	}
+	
+	/**
+	 * Publishes the elements of a file holding one large array, or the
+	 * values of a JSON Lines file, decoding them only as subscribers
+	 * request them.
+	 */
+	public static <T> Flow.Publisher<T> publisher(Path file, Class<T> type){
+		return new JsonPublisher<T>(file,type);
+	}
+	
+	/**
+	 * Same as above for a stream, which can be subscribed to once.
+	 */
+	public static <T> Flow.Publisher<T> publisher(InputStream stream, Class<T> type){
+		return new JsonPublisher<T>(stream,type);
+	}
+	
+	/**
+	 * Hacks are registered as literals of <code>JsonLiterals.getDefault()</code>.
+	 */
 	public static void addHack(Hack hack){
-		hacks.put(hack.key(), hack);
+		JsonLiterals.getDefault().register(hack);
 	}
 	public static void removeHack(String key){
-		hacks.remove(key);
+		JsonLiterals.getDefault().remove(key);
 	}
 	public static Boolean hasHack(String key){
-		return hacks.containsKey(key);
+		return JsonLiterals.getDefault().contains(key);
 	}
-	public static Hack getHack(String key){
-		return hacks.get(key);
+	public static Hack getHack(final String key){
+		if(!hasHack(key)){
+			return null;
+		}
+		return new Hack() {
+			@Override
+			public String key() {
+				return key;
+			}
+			
+			@Override
+			public Object execute(String source) {
+				return JsonLiterals.getDefault().invoke(key, source);
+			}
+		};
 	}
 	
 	
@@ -122,7 +266,38 @@ public class JSON {
 		return encode(document,formated,false);
 	}
 	public static String encode(Object document, Boolean formated, Boolean commented){
-		return new JsonEncoder(formated,commented).encode(document);
+		return mapper(formated,commented).encode(document);
+	}
+	
+	public static void encode(Object document, Appendable out) throws IOException{
+		encode(document,out,false,false);
+	}
+	public static void encode(Object document, Appendable out, Boolean formated) throws IOException{
+		encode(document,out,formated,false);
+	}
+	public static void encode(Object document, Appendable out, Boolean formated, Boolean commented) throws IOException{
+		mapper(formated,commented).encode(document,out);
+	}
+	
+	public static void encode(Object document, OutputStream out) throws IOException{
+		encode(document,out,false,false);
+	}
+	public static void encode(Object document, OutputStream out, Boolean formated) throws IOException{
+		encode(document,out,formated,false);
+	}
+	public static void encode(Object document, OutputStream out, Boolean formated, Boolean commented) throws IOException{
+		mapper(formated,commented).encode(document,out);
+	}
+
+	/**
+	 * Encodes to a UTF-8 encoded file without blocking, chunks are
+	 * written while the rest of the document is being encoded.
+	 */
+	public static CompletableFuture<Void> encodeAsync(Object document, Path file){
+		return encodeAsync(document,file,false);
+	}
+	public static CompletableFuture<Void> encodeAsync(Object document, Path file, Boolean formated){
+		return JsonAsyncFiles.encode(document,file,mapper(formated,false),ForkJoinPool.commonPool());
 	}
 
 	public static void print(Object obj) {
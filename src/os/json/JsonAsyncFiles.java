@@ -0,0 +1,331 @@
+package os.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Decoding and encoding of files without blocking the caller. The file
+ * is read or written in chunks through an <code>AsynchronousFileChannel</code>
+ * while the document is parsed or encoded on the executor: reads run up
+ * to <code>CHUNKS</code> chunks ahead of the parser, so parsing starts
+ * with the first chunk, and encoding goes on while earlier chunks are
+ * being written. Waiting for the channel is done as a managed block, a
+ * <code>ForkJoinPool</code> compensates for it.
+ */
+final class JsonAsyncFiles {
+
+	static final int CHUNK_SIZE = 64 * 1024;
+	static final int CHUNKS = 4;
+
+	// marks the end of the input in the queue of filled chunks
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private JsonAsyncFiles() {
+	}
+
+	static <T> CompletableFuture<T> decode(Path file, final Class<T> type, final JsonMapper mapper, Executor executor) {
+		final Chunks chunks;
+		try {
+			chunks = new Chunks(AsynchronousFileChannel.open(file, StandardOpenOption.READ));
+		} catch (IOException e) {
+			return failed(e);
+		}
+		chunks.fill();
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			@Override
+			public T get() {
+				try {
+					return mapper.decode(chunks, type);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				} catch (JsonParseError e) {
+					throw new CompletionException(e);
+				} finally {
+					chunks.close();
+				}
+			}
+		}, executor);
+	}
+
+	static CompletableFuture<Void> encode(final Object document, Path file, final JsonMapper mapper, Executor executor) {
+		final Writes writes;
+		try {
+			writes = new Writes(AsynchronousFileChannel.open(file, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+		} catch (IOException e) {
+			return failed(e);
+		}
+		return CompletableFuture.supplyAsync(new Supplier<Void>() {
+			@Override
+			public Void get() {
+				try {
+					try {
+						mapper.encode(document, writes);
+					} finally {
+						writes.close();
+					}
+					return null;
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, executor);
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/**
+	 * Takes the next buffer from the queue, waiting as a managed block.
+	 */
+	private static ByteBuffer take(final BlockingQueue<ByteBuffer> queue) throws InterruptedIOException {
+		ByteBuffer buffer = queue.poll();
+		if (buffer != null) {
+			return buffer;
+		}
+		final ByteBuffer[] taken = new ByteBuffer[1];
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					if (taken[0] == null) {
+						taken[0] = queue.take();
+					}
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return taken[0] != null || (taken[0] = queue.poll()) != null;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		return taken[0];
+	}
+
+	/**
+	 * Input stream over chunks read ahead from the channel, one read is
+	 * outstanding at a time.
+	 */
+	private static final class Chunks extends InputStream implements CompletionHandler<Integer, ByteBuffer> {
+		private final AsynchronousFileChannel channel;
+		private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+		private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<ByteBuffer>(CHUNKS + 1);
+		private ByteBuffer current;
+		// guarded by this
+		private long position;
+		private boolean reading;
+		private boolean ended;
+		private volatile Throwable error;
+
+		Chunks(AsynchronousFileChannel channel) {
+			this.channel = channel;
+			for (int i = 0; i < CHUNKS; i++) {
+				free.add(ByteBuffer.allocate(CHUNK_SIZE));
+			}
+		}
+
+		/**
+		 * Starts reading the next chunk if none is being read and a
+		 * buffer is free.
+		 */
+		synchronized void fill() {
+			if (reading || ended) {
+				return;
+			}
+			ByteBuffer buffer = free.poll();
+			if (buffer != null) {
+				reading = true;
+				channel.read(buffer, position, buffer, this);
+			}
+		}
+
+		@Override
+		public void completed(Integer read, ByteBuffer buffer) {
+			synchronized (this) {
+				reading = false;
+				if (read < 0) {
+					ended = true;
+					filled.add(END);
+					return;
+				}
+				position += read;
+				buffer.flip();
+				filled.add(buffer);
+			}
+			fill();
+		}
+
+		@Override
+		public void failed(Throwable error, ByteBuffer buffer) {
+			this.error = error;
+			synchronized (this) {
+				reading = false;
+				ended = true;
+				filled.add(END);
+			}
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			while (current == null || !current.hasRemaining()) {
+				if (current == END) {
+					if (error != null) {
+						throw error instanceof IOException ? (IOException) error : new IOException(error);
+					}
+					return -1;
+				}
+				if (current != null) {
+					current.clear();
+					free.add(current);
+					fill();
+				}
+				current = take(filled);
+			}
+			int count = Math.min(length, current.remaining());
+			current.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public void close() {
+			synchronized (this) {
+				ended = true;
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// nothing was written
+			}
+		}
+	}
+
+	/**
+	 * Output stream writing full chunks to the channel while the next
+	 * ones are being filled.
+	 */
+	private static final class Writes extends OutputStream {
+		private final AsynchronousFileChannel channel;
+		private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+		private ByteBuffer current;
+		private long position;
+		private boolean closed;
+		private volatile Throwable error;
+
+		Writes(AsynchronousFileChannel channel) {
+			this.channel = channel;
+			for (int i = 0; i < CHUNKS; i++) {
+				free.add(ByteBuffer.allocate(CHUNK_SIZE));
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (current == null) {
+					current = take(free);
+					check();
+				}
+				int count = Math.min(length, current.remaining());
+				current.put(bytes, offset, count);
+				offset += count;
+				length -= count;
+				if (!current.hasRemaining()) {
+					submit();
+				}
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		private void submit() {
+			final ByteBuffer buffer = current;
+			current = null;
+			buffer.flip();
+			final long at = position;
+			position += buffer.remaining();
+			channel.write(buffer, at, at, new CompletionHandler<Integer, Long>() {
+				@Override
+				public void completed(Integer written, Long start) {
+					if (buffer.hasRemaining()) {
+						channel.write(buffer, start + written, start + written, this);
+						return;
+					}
+					buffer.clear();
+					free.add(buffer);
+				}
+
+				@Override
+				public void failed(Throwable failure, Long start) {
+					error = failure;
+					buffer.clear();
+					free.add(buffer);
+				}
+			});
+		}
+
+		private void check() throws IOException {
+			if (error != null) {
+				throw error instanceof IOException ? (IOException) error : new IOException(error);
+			}
+		}
+
+		/**
+		 * Writes the last chunk, waits for all writes and closes the
+		 * channel.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if (current != null && current.position() > 0) {
+					submit();
+				} else if (current != null) {
+					free.add(current);
+					current = null;
+				}
+				for (int i = 0; i < CHUNKS; i++) {
+					take(free);
+				}
+				check();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
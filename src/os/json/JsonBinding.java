@@ -0,0 +1,27 @@
+package os.json;
+
+/**
+ * Accessors of a bean generated at compile time by the os-json annotation
+ * processor. A binding of a class <code>a.b.C</code> is named
+ * <code>a.b.C_JsonBinding</code> and is used instead of reflection
+ * whenever it is found next to the class.
+ *
+ * Properties are addressed by their index in <code>names()</code>.
+ */
+public interface JsonBinding<T> {
+
+	public String[] names();
+
+	public Class<?>[] types();
+
+	/**
+	 * Properties which are not written, marked with <code>@JsonIgnore</code>.
+	 */
+	public boolean[] ignored();
+
+	public T create();
+
+	public Object get(T bean, int index);
+
+	public void set(T bean, int index, Object value);
+}
@@ -0,0 +1,20 @@
+package os.json;
+
+/**
+ * Scratch state of one thread which tokenizers and writers created by a
+ * <code>JsonMapper</code> use instead of allocating their own: the input
+ * buffers, the text builder used for escapes, the symbol table and the
+ * output buffer. Buffers which have to grow for a large token are not
+ * kept, so the reused state keeps its size.
+ */
+final class JsonBuffers {
+
+	final char[] chars = new char[JsonTokenizer.BUFFER_SIZE];
+	final byte[] bytes = new byte[JsonTokenizer.BUFFER_SIZE];
+	final char[] output = new char[JsonWriter.BUFFER_SIZE];
+	final StringBuilder text = new StringBuilder();
+	final JsonSymbols symbols = new JsonSymbols();
+
+	// set while a call uses the buffers, nested calls get their own
+	boolean busy;
+}
@@ -0,0 +1,205 @@
+package os.json;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import os.json.annotations.JsonIgnore;
+import os.json.collections.DoubleList;
+import os.json.collections.IntList;
+import os.json.collections.LongList;
+import os.utils.Types;
+
+/**
+ * Binding plan of a class: its kind, element and key types and the
+ * properties of a bean in the order they are read and written. Plans are
+ * built once per class and cached in a <code>ClassValue</code>, so the
+ * encoder and decoder never introspect types per value. Beans with a
+ * <code>JsonBinding</code> generated at compile time are bound without
+ * any reflection.
+ */
+final class JsonCodec {
+
+	private static final ClassValue<JsonCodec> CODECS = new ClassValue<JsonCodec>() {
+		@Override
+		protected JsonCodec computeValue(Class<?> type) {
+			return new JsonCodec(type);
+		}
+	};
+
+	final Class<?> type;
+	final JsonBinding<?> binding;
+
+	final boolean bean;
+	final boolean map;
+	final boolean collection;
+	final boolean array;
+	final boolean simple;
+	final boolean encodable;
+	final boolean streamEncodable;
+	final boolean decodable;
+	final boolean streamDecodable;
+
+	// resolved element and key types, null if untyped
+	final Class<?> keyType;
+	final Class<?> valueType;
+
+	// int, long and double elements of primitive arrays and lists, which
+	// are read and written without boxing
+	final int primitive;
+
+	// properties, looked up by name when decoding
+	final JsonNames names;
+	final JsonProperty[] properties;
+	final Class<?>[] types;
+
+	// properties which are not ignored when encoding
+	final JsonProperty[] getters;
+
+	// enum constants by upper case name
+	private final Map<String, Object> constants;
+
+	static JsonCodec of(Class<?> type) {
+		return CODECS.get(type);
+	}
+
+	private JsonCodec(Class<?> type) {
+		this.type = type;
+		this.binding = binding(type);
+		this.encodable = JsonEncodable.class.isAssignableFrom(type);
+		this.streamEncodable = JsonStreamEncodable.class.isAssignableFrom(type);
+		this.decodable = JsonDecodable.class.isAssignableFrom(type);
+		this.streamDecodable = JsonStreamDecodable.class.isAssignableFrom(type);
+
+		List<String> names = new ArrayList<String>();
+		List<JsonProperty> properties = new ArrayList<JsonProperty>();
+		List<JsonProperty> getters = new ArrayList<JsonProperty>();
+		if (binding != null) {
+			this.bean = true;
+			this.map = false;
+			this.collection = false;
+			this.array = false;
+			this.simple = false;
+			this.keyType = null;
+			this.valueType = null;
+			boolean[] ignored = binding.ignored();
+			for (int i = 0; i < ignored.length; i++) {
+				JsonProperty property = new JsonProperty(binding, i);
+				names.add(property.name);
+				properties.add(property);
+				if (!ignored[i]) {
+					getters.add(property);
+				}
+			}
+		} else if (type.isArray()) {
+			this.bean = false;
+			this.map = false;
+			this.collection = false;
+			this.array = true;
+			this.simple = false;
+			this.keyType = null;
+			this.valueType = untyped(type.getComponentType());
+		} else {
+			Types.Type info = Types.getType(type);
+			this.bean = info.isBean();
+			this.map = info.isMap();
+			this.collection = !map && Collection.class.isAssignableFrom(type);
+			this.array = false;
+			this.simple = info.isSimple();
+			this.keyType = map ? untyped(info.getKeyType()) : null;
+			this.valueType = map || collection ? untyped(info.getValueType()) : null;
+			if (bean) {
+				for (Map.Entry<String, Types.Property> entry : info.getProperties().entrySet()) {
+					JsonProperty property = new JsonProperty(type, entry.getKey(), entry.getValue());
+					names.add(entry.getKey());
+					properties.add(property);
+					if (!entry.getValue().hasAnnotation(JsonIgnore.class)) {
+						getters.add(property);
+					}
+				}
+			}
+		}
+		this.names = new JsonNames(names.toArray(new String[names.size()]));
+		this.properties = properties.toArray(new JsonProperty[properties.size()]);
+		this.types = new Class<?>[this.properties.length];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = untyped(this.properties[i].type);
+		}
+		this.getters = getters.toArray(new JsonProperty[getters.size()]);
+		this.primitive = primitive(type);
+
+		if (type.isEnum()) {
+			constants = new HashMap<String, Object>();
+			for (Object item : type.getEnumConstants()) {
+				constants.put(((Enum<?>) item).name().toUpperCase(), item);
+			}
+		} else {
+			constants = null;
+		}
+	}
+
+	/**
+	 * Finds the binding generated for the class, if any.
+	 */
+	private static JsonBinding<?> binding(Class<?> type) {
+		if (type.isPrimitive() || type.isArray()) {
+			return null;
+		}
+		try {
+			Class<?> generated = Class.forName(type.getName() + "_JsonBinding", true, type.getClassLoader());
+			if (JsonBinding.class.isAssignableFrom(generated)) {
+				return (JsonBinding<?>) generated.getDeclaredConstructor().newInstance();
+			}
+		} catch (ClassNotFoundException e) {
+			// not generated
+		} catch (Exception e) {
+			throw new IllegalStateException("Can't create the binding of " + type.getName(), e);
+		}
+		return null;
+	}
+
+	private static int primitive(Class<?> type) {
+		if (type == int[].class || type == IntList.class) {
+			return JsonProperty.INT;
+		}
+		if (type == long[].class || type == LongList.class) {
+			return JsonProperty.LONG;
+		}
+		if (type == double[].class || type == DoubleList.class) {
+			return JsonProperty.DOUBLE;
+		}
+		return JsonProperty.OBJECT;
+	}
+
+	private static Class<?> untyped(Class<?> type) {
+		return type == Object.class ? null : type;
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> T newInstance() {
+		if (binding != null) {
+			return (T) binding.create();
+		}
+		if (array) {
+			return (T) Array.newInstance(type.getComponentType(), 0);
+		}
+		return (T) Types.getType(type).newInstance();
+	}
+
+	/**
+	 * Converts a scalar to this type: enums are looked up by name and
+	 * beans are built with a single argument constructor.
+	 */
+	Object convert(Object value) {
+		if (constants != null) {
+			return constants.get(value.toString().toUpperCase());
+		}
+		if (bean) {
+			return Types.getType(type).newInstance(value);
+		}
+		return value;
+	}
+}
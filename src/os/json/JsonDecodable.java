@@ -1,5 +1,10 @@
 package os.json;
 
+/**
+ * Decodes itself from its text. The raw value is copied into a new
+ * string for every call, types which are to read the input in place
+ * implement <code>JsonStreamDecodable</code> instead.
+ */
 public interface JsonDecodable {
 	public void decodeJson(String json);
 }
@@ -32,298 +32,344 @@
 
 package os.json;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import os.utils.Types;
+import os.json.collections.DoubleList;
+import os.json.collections.IntList;
+import os.json.collections.LongList;
 
 	
+/**
+ * Decodes JSON into maps, lists, arrays and beans. A decoder keeps no state
+ * between calls, one instance can be shared by any number of threads.
+ */
 public class JsonDecoder {
 	
-	private Object value;
-	private JsonTokenizer tokenizer;
-	private JsonToken token;
-	
-	@SuppressWarnings("unchecked")
 	public <T> T decode(String document, Class<T> type) throws JsonParseError{
-		
-		tokenizer = new JsonTokenizer(document);
-		
-		nextToken();
-		value = parseValue(type);
-		
-		if (nextToken() != null ){
-			tokenizer.parseError( "Unexpected characters left in input stream" );
-		}
-		return (T) value;
+		return decodeBuffered(new JsonReader(document),type);
 	}
 	
-	private JsonToken nextToken() throws JsonParseError {
-		return token = tokenizer.getNextToken();
+	public <T> T decode(byte[] document, Class<T> type) throws JsonParseError{
+		return decodeBuffered(new JsonReader(document),type);
 	}
 	
-	private JsonToken nextValidToken() throws JsonParseError {
-		token = tokenizer.getNextToken();
-		checkValidToken();
-		return token;
+	public <T> T decode(ByteBuffer document, Class<T> type) throws JsonParseError{
+		return decodeBuffered(new JsonReader(document),type);
 	}
 	
-	private void checkValidToken() throws JsonParseError {
-		if ( token == null ){
-			tokenizer.parseError( "Unexpected end of input" );
+	private <T> T decodeBuffered(JsonReader reader, Class<T> type) throws JsonParseError{
+		try {
+			return decode(reader,type);
+		} catch (IOException e) {
+			// reading from memory never fails
+			throw new IllegalStateException(e);
 		}
 	}
 	
-	private <T> T parseArray(Class<T> cls) throws JsonParseError {
-		
-		Types.Type type;
-		if(cls==null){
-			type = Types.getType(ArrayList.class);
-		}else{
-			type = Types.getType(cls);	
-		}
-		T a = type.newInstance();
-		
-		// grab the next token from the tokenizer to move
-		// past the opening [
-		nextValidToken();
-		
-		// check to see if we have an empty array
-		if ( token.type == JsonToken.Type.RIGHT_BRACKET )
-		{
-			// we're done reading the array, so return it
-			return (T)a;
-		}
-		
-		// deal with elements of the array, and use an "infinite"
-		// loop because we could have any amount of elements
-		while ( true )
-		{
-			// read in the value and add it to the array
-			readValue(a);
-			// after the value there should be a ] or a ,
-			nextValidToken();
-			
-			if ( token.type == JsonToken.Type.RIGHT_BRACKET )
-			{
-				// we're done reading the array, so return it
-				return (T)a;
-			}
-			else if ( token.type == JsonToken.Type.COMMA )
-			{
-				// move past the comma and read another value
-				nextToken();
-			}
-			else
-			{
-				tokenizer.parseError( "Expecting ] or , but found " + token.value );
-			}
-		}
-		
-		
+	public <T> T decode(Reader document, Class<T> type) throws IOException, JsonParseError{
+		return decode(new JsonReader(document),type);
 	}
 	
-	private Object convertKey(Object o, Class<?> cls) throws JsonParseError {
-		Types.Type type = Types.getType(cls);
-		if(type.isEnum()){
-			return toEnum(o, type);
-		}else
-		if(type.isBean()){
-			return toBean(o, type);
+	/**
+	 * Decodes the whole remaining input of the reader as one value.
+	 */
+	public <T> T decode(JsonReader reader, Class<T> type) throws IOException, JsonParseError{
+		T value = read(reader,type);
+		if ( reader.peek() != null ){
+			reader.syntaxError( "Unexpected characters left in input stream" );
 		}
-		return o;
+		return value;
 	}
 	
+	/**
+	 * Decodes the next value of the reader.
+	 */
 	@SuppressWarnings("unchecked")
-	private <T> T toBean(Object data, Types.Type type){
-		return (T) type.newInstance(data);
+	public <T> T read(JsonReader reader, Class<T> type) throws IOException, JsonParseError{
+		if ( reader.peek() == null ){
+			reader.syntaxError( "Unexpected end of input" );
+		}
+		return (T) parseValue(reader, type);
 	}
 	
 	@SuppressWarnings("unchecked")
-	private <T> T toEnum(Object data, Types.Type type){
-		Object[] list = type.getType().getEnumConstants();
-		for(Object item:list){
-			Enum<?> en = (Enum<?>)item;
-			if(en.name().toUpperCase().equals(data.toString().toUpperCase())){
-				return (T) en;
-			}
+	private <T> T parseArray(JsonReader reader, Class<T> cls) throws IOException, JsonParseError {
+		JsonCodec codec = JsonCodec.of(cls==null ? ArrayList.class : cls);
+		if(codec.array){
+			return (T) parseElements(reader, codec);
 		}
-		return null;
+		T a = codec.newInstance();
+		if(codec.primitive!=JsonProperty.OBJECT){
+			reader.beginArray();
+			readPrimitives(reader, a, codec.primitive);
+			reader.endArray();
+			return a;
+		}
+		if(!codec.collection){
+			// nothing to read the elements into
+			reader.skipValue();
+			return a;
+		}
+		
+		reader.beginArray();
+		
+		// deal with elements of the array, we could have any amount of them
+		Collection<Object> collection = (Collection<Object>)a;
+		while ( reader.hasNext() ){
+			// read in the value and add it to the array
+			collection.add(parseValue(reader, codec.valueType));
+		}
+		reader.endArray();
+		return a;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private void readValue(Object o) throws JsonParseError {
-		Types.Type type = Types.getType(o.getClass());
-		if(List.class.isAssignableFrom(o.getClass())){
-			List<Object> list = (List<Object>)o;
-			list.add(parseValue(type.getValueType()));
-		}else
-		if(Set.class.isAssignableFrom(o.getClass())){
-			Set<Object> list = (Set<Object>)o;
-			list.add(parseValue(type.getValueType()));
+	/**
+	 * Reads a Java array, int, long and double elements are collected
+	 * without boxing.
+	 */
+	private Object parseElements(JsonReader reader, JsonCodec codec) throws IOException, JsonParseError {
+		reader.beginArray();
+		Object a;
+		switch(codec.primitive){
+			case JsonProperty.INT:
+				IntList ints = new IntList();
+				readPrimitives(reader, ints, JsonProperty.INT);
+				a = ints.toIntArray();
+				break;
+			case JsonProperty.LONG:
+				LongList longs = new LongList();
+				readPrimitives(reader, longs, JsonProperty.LONG);
+				a = longs.toLongArray();
+				break;
+			case JsonProperty.DOUBLE:
+				DoubleList doubles = new DoubleList();
+				readPrimitives(reader, doubles, JsonProperty.DOUBLE);
+				a = doubles.toDoubleArray();
+				break;
+			default:
+				List<Object> list = new ArrayList<Object>();
+				while ( reader.hasNext() ){
+					list.add(parseValue(reader, codec.valueType));
+				}
+				Class<?> component = codec.type.getComponentType();
+				a = Array.newInstance(component, list.size());
+				for(int i=0;i<list.size();i++){
+					Object value = list.get(i);
+					if(value==null && component.isPrimitive()){
+						reader.syntaxError( "Unexpected null in " + component.getName() + " array" );
+					}
+					Array.set(a, i, value);
+				}
 		}
+		reader.endArray();
+		return a;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private void readValue(Object o, Object k) throws JsonParseError {
-		Types.Type type = Types.getType(o.getClass());
-		if(type.isMap()){
-			Map<Object,Object> map = (Map<Object,Object>)o;
-			map.put(convertKey(k,type.getKeyType()),parseValue(type.getValueType()));
-		}else if(type.isBean()){
-			if(type.getProperties().containsKey(k)){
-				Types.Property property = type.getProperties().get(k);
-				property.invokeSetter(o, parseValue(property.getType()));
-			}
+	private void readPrimitives(JsonReader reader, Object list, int primitive) throws IOException, JsonParseError {
+		switch(primitive){
+			case JsonProperty.INT:
+				IntList ints = (IntList)list;
+				while ( reader.hasNext() ){
+					ints.addInt(reader.nextInt());
+				}
+				break;
+			case JsonProperty.LONG:
+				LongList longs = (LongList)list;
+				while ( reader.hasNext() ){
+					longs.addLong(reader.nextLong());
+				}
+				break;
+			default:
+				DoubleList doubles = (DoubleList)list;
+				while ( reader.hasNext() ){
+					doubles.addDouble(reader.nextDouble());
+				}
 		}
 	}
 	
-	
+	private Object convertKey(String key, Class<?> cls) {
+		if(cls==null || cls==String.class){
+			return key;
+		}
+		return JsonCodec.of(cls).convert(key);
+	}
 	
 	/**
 	 * Attempt to parse an object.
 	 * @throws JsonParseError 
 	 */
 	@SuppressWarnings("unchecked")
-	private <T> T parseObject(Class<T> cls) throws JsonParseError {
-		if(cls!=null && JsonDecodable.class.isAssignableFrom(cls)){
+	private <T> T parseObject(JsonReader reader, Class<T> cls) throws IOException, JsonParseError {
+		JsonCodec codec = JsonCodec.of(cls==null ? HashMap.class : cls);
+		if(codec.decodable){
 			JsonDecodable value = null;
+			// the one place raw text is still copied, see JsonDecodable
+			String json = reader.nextRaw().toString();
 			try {
-				value = (JsonDecodable) cls.newInstance();
-				value.decodeJson(tokenizer.getObjectString());
+				value = codec.newInstance();
+				value.decodeJson(json);
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 			return (T)value;
 		}
-		Types.Type type;
-		if(cls==null){
-			type = Types.getType(HashMap.class);
-		}else{
-			type = Types.getType(cls);	
-		}
 		
 		// create the object internally that we're going to
-		// attempt to parse from the tokenizer
-		T o = type.newInstance();
-		
-		// store the string part of an object member so
-		// that we can assign it a value in the object
-		String key;
+		// attempt to parse from the reader
+		T o = codec.newInstance();
+		if(!codec.bean && !codec.map){
+			// nothing to read the members into
+			reader.skipValue();
+			return o;
+		}
 		
-		// grab the next token from the tokenizer
-		nextValidToken();
+		reader.beginObject();
 		
-		// check to see if we have an empty object
-		if ( token.type == JsonToken.Type.RIGHT_BRACE )
-		{
-			// we're done reading the object, so return it
-			return (T)o;
-		}
-		// in non-strict mode an empty object is also a comma
-		// followed by a right bracket
-		else if ( token.type == JsonToken.Type.COMMA )
-		{
-			// move past the comma
-			nextValidToken();
-			
-			// check to see if we're reached the end of the object
-			if ( token.type == JsonToken.Type.RIGHT_BRACE )
-			{
-				return (T)o;
+		// deal with members of the object, we could have any amount of them
+		if(codec.bean){
+			while ( reader.hasNext() ){
+				int index = reader.nextName(codec.names);
+				if(index<0){
+					// unknown members are skipped
+					reader.skipValue();
+				}else{
+					readProperty(reader, o, codec.properties[index]);
+				}
 			}
-			else
-			{
-				tokenizer.parseError( "Leading commas are not supported.  Expecting '}' but found " + token.value );
+		}else{
+			Map<Object,Object> map = (Map<Object,Object>)o;
+			while ( reader.hasNext() ){
+				// the name we read is the key for the object
+				Object key = convertKey(reader.nextName(), codec.keyType);
+				map.put(key, parseValue(reader, codec.valueType));
 			}
 		}
-		
-		// deal with members of the object, and use an "infinite"
-		// loop because we could have any amount of members
-		while ( true )
-		{
-			if ( token.type == JsonToken.Type.STRING )
-			{
-				// the string value we read is the key for the object
-				key = (String) token.value;
-				
-				// move past the string to see what's next
-				nextValidToken();
-				
-				// after the string there should be a :
-				if ( token.type == JsonToken.Type.COLON )
-				{
-					// move past the : and read/assign a value for the key
-					nextToken();
-					readValue(o, key);
-					
-					
-					// move past the value to see what's next
-					nextValidToken();
-					
-					// after the value there's either a } or a ,
-					if ( token.type == JsonToken.Type.RIGHT_BRACE ){
-						return (T)o;
-					}
-					else if ( token.type == JsonToken.Type.COMMA ){
-						// skip past the comma and read another member
-						nextToken();
-					}
-					else
-					{
-						tokenizer.parseError( "Expecting } or , but found " + token.value );
-					}
-				}
-				else
-				{
-					tokenizer.parseError( "Expecting : but found " + token.value );
-				}
+		reader.endObject();
+		return o;
+	}
+	
+	/**
+	 * Reads a member value into a bean property, int, long and double
+	 * values are passed on without boxing. Null leaves primitives as
+	 * they are.
+	 */
+	private void readProperty(JsonReader reader, Object o, JsonProperty property) throws IOException, JsonParseError {
+		if(property.primitive!=JsonProperty.OBJECT){
+			if(reader.peek()==JsonToken.Type.NULL){
+				reader.nextNull();
+				return;
 			}
-			else
-			{
-				tokenizer.parseError( "Expecting string but found " + token.value );
+			switch(property.primitive){
+				case JsonProperty.INT:
+					property.setInt(o, reader.nextInt());
+					return;
+				case JsonProperty.LONG:
+					property.setLong(o, reader.nextLong());
+					return;
+				case JsonProperty.DOUBLE:
+					property.setDouble(o, reader.nextDouble());
+					return;
 			}
 		}
+		Object value = parseValue(reader, property.type);
+		if(value!=null || !property.type.isPrimitive()){
+			property.set(o, value);
+		}
 	}
 	
 	/**
 	 * Attempt to parse a value
 	 * @throws JsonParseError 
 	 */
-	@SuppressWarnings("unchecked")
-	private <T> T parseValue(Class<T> type) throws JsonParseError {
-		
-		checkValidToken();
-		switch ( token.type ){
+	private Object parseValue(JsonReader reader, Class<?> type) throws IOException, JsonParseError {
+		if(type==Object.class){
+			type = null;
+		}
+		JsonToken.Type token = reader.peek();
+		if(token==null){
+			reader.syntaxError( "Unexpected end of input" );
+		}
+		if(type!=null && token!=JsonToken.Type.NULL && JsonCodec.of(type).streamDecodable){
+			JsonStreamDecodable value = JsonCodec.of(type).newInstance();
+			value.decodeJson(reader);
+			return value;
+		}
+		switch ( token ){
 			case LEFT_BRACE:
-				if(type==Object.class){
-					return (T) parseObject(HashMap.class);	
-				}else{
-					return (T) parseObject(type);	
-				}
+				return parseObject(reader, type);	
 			case LEFT_BRACKET:
-				if(type==Object.class){
-					return (T) parseArray(ArrayList.class);	
-				}else{
-					return (T) parseArray(type);	
-				}
+				return parseArray(reader, type);	
 			case STRING:
 			case NUMBER:
 			case TRUE:
 			case FALSE:
 			case NULL:
-				if(type==Object.class){
-					return (T) token.value;
-				}else{
-					return (T) token.readValue(type);	
-				}
+				return parseScalar(reader, type, token);
 			default:
-				tokenizer.parseError( "Unexpected " + token.value );
+				reader.syntaxError( "Unexpected " + token );
 		}
 		return null;
 	}
+	
+	/**
+	 * Reads a string, number, boolean or null and converts
+	 * it to the given type.
+	 */
+	private Object parseScalar(JsonReader reader, Class<?> type, JsonToken.Type token) throws IOException, JsonParseError {
+		if(token==JsonToken.Type.NULL){
+			reader.nextNull();
+			return null;
+		}
+		if(type==null){
+			return reader.nextValue();
+		}
+		if(type==String.class){
+			return reader.nextString();
+		}
+		if(type==Integer.class || type==int.class){
+			return reader.nextInt();
+		}
+		if(type==Long.class || type==long.class){
+			return reader.nextLong();
+		}
+		if(type==Double.class || type==double.class){
+			return reader.nextDouble();
+		}
+		if(type==Float.class || type==float.class){
+			return (float) reader.nextDouble();
+		}
+		if(type==Short.class || type==short.class){
+			return (short) reader.nextInt();
+		}
+		if(type==Byte.class || type==byte.class){
+			return (byte) reader.nextInt();
+		}
+		if(type==BigDecimal.class){
+			return reader.nextBigDecimal();
+		}
+		if(type==BigInteger.class){
+			return reader.nextBigInteger();
+		}
+		if(type==Boolean.class || type==boolean.class){
+			if(token==JsonToken.Type.STRING){
+				return Boolean.valueOf(reader.nextString());
+			}
+			return reader.nextBoolean();
+		}
+		Object value = reader.nextValue();
+		if(type.isInstance(value)){
+			return value;
+		}
+		return JsonCodec.of(type).convert(value);
+	}
 }
-
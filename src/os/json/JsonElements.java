@@ -0,0 +1,263 @@
+package os.json;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the elements of a top-level array in a UTF-8 encoded
+ * file. A structural pre-scan finds top-level commas about every
+ * <code>CHUNK_SIZE</code> bytes (less for small files), which divide the
+ * array into chunks of whole elements; splits hand over chunks, and each
+ * chunk is mapped and decoded on its own, so the array is never held as
+ * a whole.
+ */
+final class JsonElements<T> implements Spliterator<T> {
+
+	static final int CHUNK_SIZE = 4 * 1024 * 1024;
+	static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+	private static final int SEGMENT_SIZE = 256 * 1024 * 1024;
+
+	// scanner states
+	private static final int VALUE         = 0;
+	private static final int STRING        = 1;
+	private static final int ESCAPE        = 2;
+	private static final int SLASH         = 3;
+	private static final int LINE_COMMENT  = 4;
+	private static final int BLOCK_COMMENT = 5;
+	private static final int BLOCK_STAR    = 6;
+
+	private static final JsonDecoder DECODER = new JsonDecoder();
+
+	private final FileChannel channel;
+	private final Class<T> type;
+	// offsets of '[', of the top-level commas between chunks and of ']'
+	private final long[] bounds;
+	private int chunk;
+	private final int end;
+	private JsonReader reader;
+
+	JsonElements(FileChannel channel, Class<T> type, long[] bounds) {
+		this(channel, type, bounds, 0, bounds.length - 1);
+	}
+
+	private JsonElements(FileChannel channel, Class<T> type, long[] bounds, int chunk, int end) {
+		this.channel = channel;
+		this.type = type;
+		this.bounds = bounds;
+		this.chunk = chunk;
+		this.end = end;
+	}
+
+	/**
+	 * Scans the file and returns a stream of its elements, closing the
+	 * stream closes the file.
+	 */
+	static <T> Stream<T> stream(File file, Class<T> type) throws IOException, JsonParseError {
+		final FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			long chunks = ForkJoinPool.getCommonPoolParallelism() * 16L;
+			int chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(CHUNK_SIZE, channel.size() / chunks));
+			long[] bounds = index(channel, chunkSize);
+			return StreamSupport.stream(new JsonElements<T>(channel, type, bounds), false).onClose(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						channel.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		} catch (JsonParseError e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		try {
+			while (true) {
+				if (reader == null) {
+					if (chunk == end) {
+						return false;
+					}
+					reader = open(chunk++);
+				}
+				if (reader.hasNext()) {
+					action.accept(DECODER.read(reader, type));
+					return true;
+				}
+				reader = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (JsonParseError e) {
+			throw new IllegalArgumentException(e.getMessage() + " at " + e.getLocation(), e);
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		int middle = (chunk + end) >>> 1;
+		if (middle == chunk) {
+			return null;
+		}
+		if (reader != null) {
+			// a chunk is being read, the prefix would have to include it
+			return null;
+		}
+		Spliterator<T> prefix = new JsonElements<T>(channel, type, bounds, chunk, middle);
+		chunk = middle;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		// in chunks, which is what the framework balances
+		return end - chunk + (reader == null ? 0 : 1);
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | IMMUTABLE;
+	}
+
+	private JsonReader open(int index) throws IOException {
+		long from = bounds[index] + 1;
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, bounds[index + 1] - from);
+		JsonUtf8Tokenizer tokenizer = new JsonUtf8Tokenizer(bytes);
+		tokenizer.offset = from;
+		JsonReader reader = new JsonReader(tokenizer);
+		reader.beginElements();
+		return reader;
+	}
+
+	/**
+	 * Scans the file for the brackets of the top-level array and the
+	 * top-level commas which start a new chunk. Strings in either quotes
+	 * and comments are recognized like the tokenizer does, only spaces
+	 * and comments may follow the array.
+	 */
+	static long[] index(FileChannel channel, int chunkSize) throws IOException, JsonParseError {
+		long[] bounds = new long[16];
+		int count = 0;
+		long size = channel.size();
+		int depth = 0;
+		// the opening bracket of each level, closers have to match it
+		byte[] openers = new byte[32];
+		int state = VALUE;
+		int quote = 0;
+		for (long base = 0; base < size; base += SEGMENT_SIZE) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(SEGMENT_SIZE, size - base));
+			bytes.order(ByteOrder.LITTLE_ENDIAN);
+			int limit = bytes.limit();
+			for (int i = 0; i < limit; i++) {
+				int b = bytes.get(i) & 0xFF;
+				switch (state) {
+					case VALUE:
+						if (b == '"' || b == '\'') {
+							state = STRING;
+							quote = b;
+						} else if (b == '/') {
+							state = SLASH;
+						} else if (b == '[' || b == '{') {
+							if (depth == openers.length) {
+								openers = Arrays.copyOf(openers, depth * 2);
+							}
+							openers[depth] = (byte) b;
+							if (depth++ == 0) {
+								if (count > 0) {
+									throw error("Unexpected characters left in input stream", base + i);
+								}
+								if (b != '[') {
+									throw error("Expecting a top-level array", base + i);
+								}
+								bounds[count++] = base + i;
+							}
+						} else if (b == ']' || b == '}') {
+							if (depth == 0 || openers[depth - 1] != (b == ']' ? '[' : '{')) {
+								throw error("Unexpected " + (char) b, base + i);
+							}
+							if (--depth == 0) {
+								bounds = add(bounds, count++, base + i);
+							}
+						} else if (b == ',' && depth == 1 && base + i - bounds[count - 1] >= chunkSize) {
+							bounds = add(bounds, count++, base + i);
+						} else if (depth == 0 && b > ' ') {
+							throw error(count == 0 ? "Expecting a top-level array" : "Unexpected characters left in input stream", base + i);
+						}
+						break;
+					case STRING:
+						i = JsonScanner.special(bytes, i, limit, quote);
+						if (i == limit) {
+							break;
+						}
+						b = bytes.get(i);
+						if (b == '\\') {
+							state = ESCAPE;
+						} else if (b == quote) {
+							state = VALUE;
+						}
+						break;
+					case ESCAPE:
+						state = STRING;
+						break;
+					case SLASH:
+						if (b == '/') {
+							state = LINE_COMMENT;
+						} else if (b == '*') {
+							state = BLOCK_COMMENT;
+						} else {
+							throw error("Unexpected / encountered", base + i);
+						}
+						break;
+					case LINE_COMMENT:
+						if (b == '\n' || b == '\r') {
+							state = VALUE;
+						}
+						break;
+					case BLOCK_COMMENT:
+						if (b == '*') {
+							state = BLOCK_STAR;
+						}
+						break;
+					case BLOCK_STAR:
+						state = b == '/' ? VALUE : b == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+						break;
+				}
+			}
+		}
+		if (depth > 0 || count == 0) {
+			throw error("Unexpected end of input", size);
+		}
+		return Arrays.copyOf(bounds, count);
+	}
+
+	private static long[] add(long[] bounds, int index, long bound) {
+		if (index == bounds.length) {
+			bounds = Arrays.copyOf(bounds, index * 2);
+		}
+		bounds[index] = bound;
+		return bounds;
+	}
+
+	private static JsonParseError error(String message, long location) {
+		return new JsonParseError(message, (int) Math.min(location, Integer.MAX_VALUE), null);
+	}
+}
@@ -32,7 +32,10 @@
 
 package os.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.List;
@@ -40,9 +43,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
-import os.json.annotations.JsonIgnore;
-import os.utils.StringUtils;
-import os.utils.Types;
+import os.json.collections.DoubleList;
+import os.json.collections.IntList;
+import os.json.collections.LongList;
+
 
 
 public class JsonEncoder
@@ -61,215 +65,228 @@ public class JsonEncoder
 
 	public String encode( Object value)
 	{
-		return convertToString( value, 0 );
+		JsonWriter writer = new JsonWriter(formated);
+		try {
+			writeValue( value, writer );
+		} catch (IOException e) {
+			// in-memory writer never fails
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+	
+	public void encode( Object value, Appendable out) throws IOException
+	{
+		JsonWriter writer = new JsonWriter(out,formated);
+		writeValue( value, writer );
+		writer.flush();
+	}
+	
+	public void encode( Object value, OutputStream out) throws IOException
+	{
+		JsonWriter writer = new JsonWriter(out,formated);
+		writeValue( value, writer );
+		writer.flush();
+	}
+	
+	/**
+	 * Writes the value to a writer, the writer is not flushed.
+	 */
+	public void encode( Object value, JsonWriter writer) throws IOException
+	{
+		writeValue( value, writer );
 	}
 	
-	private String comment(String text){
-		return commented?"/*"+text+"*/":"";
+	private void comment(Object value, JsonWriter writer) throws IOException{
+		if(commented){
+			writer.comment(value.getClass().getSimpleName());
+		}
 	}
 	
-	private String convertToString( Object value, int depth ) {
+	private void writeValue( Object value, JsonWriter writer ) throws IOException {
 		// determine what value is and convert it based on it's type
 		if(value ==null){
-			return "null";	
+			writer.nullValue();
+			return;
 		}else 
 		if (String.class.isAssignableFrom(value.getClass())){
-			return escapeString((String) value)+comment(value.getClass().getSimpleName());
+			writer.value((String) value);
 		}else 
 		if (Number.class.isAssignableFrom(value.getClass())){
-			return((value!=null) ? value.toString() : "null")+comment(value.getClass().getSimpleName());
+			if(
+				value instanceof Integer || value instanceof Long ||
+				value instanceof Short   || value instanceof Byte
+			){
+				writer.value(((Number)value).longValue());
+			}else{
+				writer.raw(value.toString());
+			}
 		}else 
 		if (Class.class.isAssignableFrom(value.getClass())){
-			return((value!=null) ? escapeString(((Class<?>)value).getName()) : "null")+comment(value.getClass().getSimpleName());
+			writer.value(((Class<?>)value).getName());
 		}else 
 		if (Enum.class.isAssignableFrom(value.getClass())){
-			return((value!=null) ? escapeString(((Enum<?>)value).name()) : "null")+comment(value.getClass().getSimpleName());
+			writer.value(((Enum<?>)value).name());
 		}else 
 		if (Boolean.class.isAssignableFrom(value.getClass())){
-			return ((Boolean)value ? "true" : "false")+comment(value.getClass().getSimpleName());
+			writer.value(((Boolean)value).booleanValue());
 		}else 
 		if (Date.class.isAssignableFrom(value.getClass())){
-			// convert boolean to string easily
-			return (new Long(((Date)value).getTime()).toString())+ comment(value.getClass().getSimpleName());
+			writer.value(((Date)value).getTime());
 		}else 
 		if (UUID.class.isAssignableFrom(value.getClass())){
-			// convert boolean to string easily
-			return escapeString(((UUID)value).toString())+comment(value.getClass().getSimpleName());
+			writer.value(((UUID)value).toString());
+		}else 
+		if (value.getClass().isArray()){
+			writeElements(value, writer);
 		}else 
 		if (
 			List.class.isAssignableFrom(value.getClass())||
 			Set.class.isAssignableFrom(value.getClass())
 		){
 			// call the helper method to convert an array
-			return arrayToString(value, depth )+comment(value.getClass().getSimpleName());
-		}if (Annotation.class.isAssignableFrom(value.getClass())){
-			return annotationToString((Annotation)value, depth )+comment(value.getClass().getSimpleName());
+			writeArray(value, writer);
+		}else
+		if (Annotation.class.isAssignableFrom(value.getClass())){
+			writeAnnotation((Annotation)value, writer);
 		}else{
 			// call the helper method to convert an object
-			return objectToString( value, depth  )+comment(value.getClass().getSimpleName());
+			writeObject( value, writer );
 		}
-	}
-	
-	
-
-	/**
-	 * Escapes a string accoding to the JSON specification.
-	 *
-	 * @param str The string to be escaped
-	 * @return The string with escaped special characters
-	 * 		according to the JSON specification
-	 */
-	private  String escapeString( String str ) {		
-		String s = "";
-		char ch;
-		int len = str.length();
-		for ( int i = 0; i < len; i++ ) {
-			ch = str.charAt( i );
-			switch ( ch )
-			{
-				case '"': // quotation mark
-					s += "\\\"";
-					break;
-				//case '/':	// solidus
-				//	s += "\\/";
-				//	break;
-				case '\\': // reverse solidus
-					s += "\\\\";
-					break;
-				case '\b': // bell
-					s += "\\b";
-					break;
-				case '\f': // form feed
-					s += "\\f";
-					break;
-				case '\n': // newline
-					s += "\\n";
-					break;
-				case '\r': // carriage return
-					s += "\\r";
-					break;
-				case '\t': // horizontal tab
-					s += "\\t";
-					break;
-				default: // everything else
-					// check for a control character and escape as unicode
-					if ( ch < ' ' ){
-						// get the hex digit(s) of the character (either 1 or 2 digits)
-						String hexCode = Integer.toString((int)ch,16);
-						
-						// ensure that there are 4 digits by adjusting
-						// the # of zeros accordingly.
-						String zeroPad = hexCode.length() == 2 ? "00" : "000";
-						
-						// create the unicode escape sequence with 4 hex digits
-						s += "\\u" + zeroPad + hexCode;
-					}else{
-						
-						// no need to do any special encoding, just pass-through
-						s += ch;
-						
-					}
-			} // end switch
-			
-		} // end for loop
-		
-		return "\"" + s + "\"";
+		comment(value, writer);
 	}
 	
 	@SuppressWarnings("unchecked")
-	private String arrayToString( Object a , int depth ) {
-		String s = "";
-		if (List.class.isAssignableFrom(a.getClass())){
+	private void writeArray( Object a , JsonWriter writer ) throws IOException {
+		writer.beginArray();
+		if (a instanceof IntList){
+			IntList list = (IntList)a;
+			for ( int i = 0; i < list.size(); i++ ){
+				writer.value(list.getInt(i));
+			}
+		}else if (a instanceof LongList){
+			LongList list = (LongList)a;
+			for ( int i = 0; i < list.size(); i++ ){
+				writer.value(list.getLong(i));
+			}
+		}else if (a instanceof DoubleList){
+			DoubleList list = (DoubleList)a;
+			for ( int i = 0; i < list.size(); i++ ){
+				writer.value(list.getDouble(i));
+			}
+		}else if (List.class.isAssignableFrom(a.getClass())){
 			List<Object> list = ((List<Object>)a);
-			if(list.size()>0){
-				for ( int i = 0; i < list.size(); i++ ){
-					s += convertToString(list.get(i), depth)+",";
-				}
-				s = s.substring(0,s.length()-1);
+			for ( int i = 0; i < list.size(); i++ ){
+				writeValue(list.get(i), writer);
 			}
 		}else if(Set.class.isAssignableFrom(a.getClass())){
 			Set<Object> list = ((Set<Object>)a);
-			if(list.size()>0){
-				for (Object value:list){
-					s += convertToString(value, depth)+",";
-				}
-				s = s.substring(0,s.length()-1);
+			for (Object value:list){
+				writeValue(value, writer);
 			}
 		}
-		return "[" + s + "]";
+		writer.endArray();
 	}
-	private String annotationToString(Annotation value, int depth) {
-		String el = formated?"\n":"";
-		String d0 = formated?StringUtils.repeat("  ", depth)  :"";
-		String d1 = formated?StringUtils.repeat("  ", depth+1):"";
-		String s = "";
-		
-		
-		
-		
-		Method[] methods = value.annotationType().getDeclaredMethods();
-		for(Method method:methods){
-			try {
-				s += d1+escapeString( method.getName() ) + ":" + convertToString( method.invoke(value, new Object[0]), depth+1)+","+el;
-			} catch (Exception e) {
-				e.printStackTrace();
+	
+	/**
+	 * Writes a Java array, int, long and double elements without boxing.
+	 */
+	private void writeElements( Object a , JsonWriter writer ) throws IOException {
+		writer.beginArray();
+		if (a instanceof int[]){
+			for (int value:(int[])a){
+				writer.value(value);
+			}
+		}else if (a instanceof long[]){
+			for (long value:(long[])a){
+				writer.value(value);
+			}
+		}else if (a instanceof double[]){
+			for (double value:(double[])a){
+				writer.value(value);
+			}
+		}else{
+			int length = Array.getLength(a);
+			for ( int i = 0; i < length; i++ ){
+				writeValue(Array.get(a, i), writer);
 			}
 		}
-		
-		
-		if(s.length()>1){
-			s = s.substring(0,s.length()-(formated?2:1))+el;
-			return "{"+el + s + d0+"}";
+		writer.endArray();
+	}
+	
+	private void writeAnnotation(Annotation value, JsonWriter writer) throws IOException {
+		Method[] methods = value.annotationType().getDeclaredMethods();
+		// a marker is written as "true", commented like any other value by the caller
+		if(methods.length==0){
+			writer.value("true");
 		}else{
-			return "\"true\"";
+			writer.beginObject();
+			for(Method method:methods){
+				try {
+					Object member = method.invoke(value, new Object[0]);
+					writer.name(method.getName());
+					writeValue(member, writer);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			writer.endObject();
 		}
 	}
+	
 	@SuppressWarnings({ "unchecked" })
-	private String objectToString( Object o , int depth ) {
-		String el = formated?"\n":"";
-		String d0 = formated?StringUtils.repeat("  ", depth)  :"";
-		String d1 = formated?StringUtils.repeat("  ", depth+1):"";
-		String s = "";
-		
-		
-		if(JsonEncodable.class.isAssignableFrom(o.getClass())){
-			return ((JsonEncodable)o).encodeJson();
+	private void writeObject( Object o , JsonWriter writer ) throws IOException {
+		JsonCodec codec = JsonCodec.of(o.getClass());
+		if(codec.streamEncodable){
+			((JsonStreamEncodable)o).encodeJson(writer);
+			return;
 		}
-		Types.Type type = Types.getType(o.getClass());		
-		if(type.isSimple()){
-			return "\""+o.toString()+"\"";
-		}else if (type.isMap()){
+		if(codec.encodable){
+			writer.raw(((JsonEncodable)o).encodeJson());
+			return;
+		}
+		if(codec.simple){
+			writer.value(o.toString());
+			return;
+		}
+		writer.beginObject();
+		if (codec.map){
 			Map<Object,Object> map = (Map<Object,Object>)o;
 			for(Map.Entry<Object, Object> entry:map.entrySet()){
 				if(entry.getValue()!=null){
-					String vs = convertToString( entry.getValue(), depth+1);
-					if(vs!=null && vs.length()>0){
-						s += d1+escapeString( entry.getKey().toString() ) + ":" +vs+","+el;
-					}
+					writer.name(entry.getKey().toString());
+					writeValue( entry.getValue(), writer );
 				}
 			}
-			
-		}else if(type.isBean()){
-			Map<String, Types.Property> properties = type.getProperties();
-			for(Map.Entry<String, Types.Property> entry:properties.entrySet()){
-				Types.Property property = entry.getValue();
-				if(!property.hasAnnotation(JsonIgnore.class)){
-					Object val = property.invokeGetter(o);
-					if(val!=null){
-						String vs =  convertToString( val, depth+1 );
-						if(vs!=null && vs.length()>0){
-							s += d1+escapeString( entry.getKey().toString() ) + ":" +vs+","+el;
-						}
+		}else if(codec.bean){
+			JsonProperty[] getters = codec.getters;
+			for(int i=0;i<getters.length;i++){
+				JsonProperty property = getters[i];
+				if(!commented && property.primitive!=JsonProperty.OBJECT){
+					// primitives are written without boxing
+					writer.name(property.name);
+					switch(property.primitive){
+						case JsonProperty.INT:
+							writer.value(property.getInt(o));
+							break;
+						case JsonProperty.LONG:
+							writer.value(property.getLong(o));
+							break;
+						default:
+							writer.value(property.getDouble(o));
 					}
+					continue;
+				}
+				Object val = property.get(o);
+				if(val!=null){
+					writer.name(property.name);
+					writeValue( val, writer );
 				}
 			}
 		}
-		if(s.length()>1){
-			s = s.substring(0,s.length()-(formated?2:1))+el;
-			return "{"+el + s + d0+"}";
-		}else{
-			return "";
-		}
+		writer.endObject();
 	}
 	
 }
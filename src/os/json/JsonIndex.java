@@ -0,0 +1,321 @@
+package os.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Structural index of a document in memory, for reading a few values out
+ * of a large document. Building the index runs the tokenizer over the
+ * input once and records, for every value and member name, the position
+ * where it starts, its type and for arrays and objects the entry of the
+ * closing bracket. Nothing is materialized while doing so.
+ *
+ * Entries of the index are addressed by their number, the document is
+ * entry 0. Objects are laid out as their opening brace, a name and a
+ * value entry for each member and the closing brace; arrays as their
+ * opening bracket, the elements and the closing bracket. Moving to a
+ * sibling skips a whole array or object in one step, values are only
+ * read when they are asked for.
+ *
+ * An index reads through one tokenizer and is not thread safe.
+ */
+public final class JsonIndex {
+
+	private static final JsonToken.Type[] TYPES = JsonToken.Type.values();
+	private static final JsonDecoder DECODER = new JsonDecoder();
+
+	private final JsonTokenizer tokenizer;
+	private int size;
+	// start of each entry in the input
+	private int[] positions;
+	// type of each entry
+	private byte[] types;
+	// the closing entry of arrays and objects, the opening one of closers
+	private int[] links;
+
+	public JsonIndex(String document) throws JsonParseError {
+		this(new JsonTokenizer(document.toCharArray()));
+	}
+
+	public JsonIndex(byte[] document) throws JsonParseError {
+		this(new JsonUtf8Tokenizer(document));
+	}
+
+	/**
+	 * Indexes the remaining UTF-8 encoded bytes of the buffer, which
+	 * must not be changed while the index is used.
+	 */
+	public JsonIndex(ByteBuffer document) throws JsonParseError {
+		this(new JsonUtf8Tokenizer(document));
+	}
+
+	private JsonIndex(JsonTokenizer tokenizer) throws JsonParseError {
+		this.tokenizer = tokenizer;
+		int capacity = 64;
+		positions = new int[capacity];
+		types = new byte[capacity];
+		links = new int[capacity];
+		try {
+			build(new JsonReader(tokenizer));
+		} catch (IOException e) {
+			// reading from memory never fails
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void build(JsonReader reader) throws IOException, JsonParseError {
+		int[] open = new int[32];
+		int depth = 0;
+		do {
+			JsonToken.Type type = reader.peek();
+			if (type == null) {
+				reader.syntaxError("Unexpected end of input");
+			}
+			int entry = add(type, (int) tokenizer.getTokenStart());
+			switch (type) {
+				case LEFT_BRACE:
+				case LEFT_BRACKET:
+					if (type == JsonToken.Type.LEFT_BRACE) {
+						reader.beginObject();
+					} else {
+						reader.beginArray();
+					}
+					if (depth == open.length) {
+						open = Arrays.copyOf(open, depth * 2);
+					}
+					open[depth++] = entry;
+					break;
+				case RIGHT_BRACE:
+				case RIGHT_BRACKET:
+					if (type == JsonToken.Type.RIGHT_BRACE) {
+						reader.endObject();
+					} else {
+						reader.endArray();
+					}
+					int opener = open[--depth];
+					links[opener] = entry;
+					links[entry] = opener;
+					break;
+				default:
+					// names and scalars are only passed over
+					reader.skipValue();
+			}
+		} while (depth > 0);
+		if (reader.peek() != null) {
+			reader.syntaxError("Unexpected characters left in input stream");
+		}
+	}
+
+	private int add(JsonToken.Type type, int position) {
+		if (size == positions.length) {
+			int capacity = size * 2;
+			positions = Arrays.copyOf(positions, capacity);
+			types = Arrays.copyOf(types, capacity);
+			links = Arrays.copyOf(links, capacity);
+		}
+		positions[size] = position;
+		types[size] = (byte) type.ordinal();
+		return size++;
+	}
+
+	/**
+	 * Number of entries in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Type of an entry: <code>LEFT_BRACE</code> for objects,
+	 * <code>LEFT_BRACKET</code> for arrays, <code>NAME</code> for
+	 * member names or the type of a scalar.
+	 */
+	public JsonToken.Type getType(int entry) {
+		return TYPES[types[entry]];
+	}
+
+	/**
+	 * Position of the entry in the input, in characters or bytes.
+	 */
+	public int getPosition(int entry) {
+		return positions[entry];
+	}
+
+	/**
+	 * Entry of the first element or member name of an array or object,
+	 * -1 if it is empty.
+	 */
+	public int first(int container) {
+		if (!isContainer(container)) {
+			throw new IllegalArgumentException("Entry " + container + " is no array or object");
+		}
+		return container + 1 == links[container] ? -1 : container + 1;
+	}
+
+	/**
+	 * Entry after an element or member, -1 if it was the last one. For
+	 * members, pass and get the entry of the name.
+	 */
+	public int next(int entry) {
+		int next = types[entry] == JsonToken.Type.NAME.ordinal() ? skip(entry + 1) : skip(entry);
+		return next == size || isCloser(next) ? -1 : next;
+	}
+
+	/**
+	 * Value of a member, given the entry of its name.
+	 */
+	public int value(int name) {
+		return name + 1;
+	}
+
+	/**
+	 * Number of elements or members.
+	 */
+	public int length(int container) {
+		int length = 0;
+		for (int entry = first(container); entry >= 0; entry = next(entry)) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Entry of the value of a member, -1 if the object has no such member.
+	 */
+	public int get(int object, String name) throws JsonParseError {
+		if (types[object] != JsonToken.Type.LEFT_BRACE.ordinal()) {
+			return -1;
+		}
+		for (int entry = first(object); entry >= 0; entry = next(entry)) {
+			if (seek(entry).isName(name)) {
+				return entry + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Entry of an element, -1 if the array is shorter.
+	 */
+	public int get(int array, int index) {
+		if (types[array] != JsonToken.Type.LEFT_BRACKET.ordinal()) {
+			return -1;
+		}
+		int entry = first(array);
+		for (int i = 0; i < index && entry >= 0; i++) {
+			entry = next(entry);
+		}
+		return entry;
+	}
+
+	public String getName(int name) throws JsonParseError {
+		return seek(name).getString();
+	}
+
+	/**
+	 * Text of a string or number.
+	 */
+	public String getString(int entry) throws JsonParseError {
+		return scalar(entry).getString();
+	}
+
+	public long getLong(int entry) throws JsonParseError {
+		return scalar(entry).getLong();
+	}
+
+	public int getInt(int entry) throws JsonParseError {
+		long value = getLong(entry);
+		if ((int) value != value) {
+			tokenizer.parseError("Expecting int but found " + value);
+		}
+		return (int) value;
+	}
+
+	public double getDouble(int entry) throws JsonParseError {
+		return scalar(entry).getDouble();
+	}
+
+	public BigDecimal getBigDecimal(int entry) throws JsonParseError {
+		return scalar(entry).getBigDecimal();
+	}
+
+	public boolean getBoolean(int entry) throws JsonParseError {
+		return scalar(entry).getBoolean();
+	}
+
+	public boolean isNull(int entry) {
+		return types[entry] == JsonToken.Type.NULL.ordinal();
+	}
+
+	/**
+	 * Decodes the value of an entry like <code>JsonDecoder</code> does.
+	 */
+	public <T> T decode(int entry, Class<T> type) throws JsonParseError {
+		if (types[entry] == JsonToken.Type.NAME.ordinal() || isCloser(entry)) {
+			throw new IllegalArgumentException("Entry " + entry + " is no value");
+		}
+		tokenizer.seek(positions[entry]);
+		try {
+			return DECODER.read(new JsonReader(tokenizer), type);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Text of the value of an entry as it is written in the input.
+	 */
+	public String getRaw(int entry) {
+		int from = positions[entry];
+		int to = isContainer(entry) ? positions[links[entry]] + 1 : end(entry);
+		return tokenizer.text(from, to);
+	}
+
+	private int end(int entry) {
+		try {
+			seek(entry);
+			return (int) tokenizer.getTokenEnd();
+		} catch (JsonParseError e) {
+			// the entry was read when the index was built
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private JsonTokenizer scalar(int entry) throws JsonParseError {
+		if (isContainer(entry) || isCloser(entry)) {
+			throw new IllegalArgumentException("Entry " + entry + " is no scalar");
+		}
+		return seek(entry);
+	}
+
+	private JsonTokenizer seek(int entry) throws JsonParseError {
+		tokenizer.seek(positions[entry]);
+		try {
+			tokenizer.next();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return tokenizer;
+	}
+
+	private int skip(int entry) {
+		return isContainer(entry) ? links[entry] + 1 : entry + 1;
+	}
+
+	private boolean isContainer(int entry) {
+		int type = types[entry];
+		return type == JsonToken.Type.LEFT_BRACE.ordinal() || type == JsonToken.Type.LEFT_BRACKET.ordinal();
+	}
+
+	private boolean isCloser(int entry) {
+		int type = types[entry];
+		return type == JsonToken.Type.RIGHT_BRACE.ordinal() || type == JsonToken.Type.RIGHT_BRACKET.ordinal();
+	}
+
+	@Override
+	public String toString() {
+		return "JsonIndex[" + size + " entries]";
+	}
+}
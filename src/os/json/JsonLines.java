@@ -0,0 +1,426 @@
+package os.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decoder of JSON Lines (NDJSON): one value per line, blank lines are
+ * ignored. The input is read in blocks of whole lines, split at the
+ * last newline of each block without decoding anything; the blocks
+ * are then decoded in parallel, each by one thread with the reused
+ * buffers of a <code>JsonMapper</code>.
+ *
+ * In ordered mode values come out in the order of the lines, otherwise
+ * in whatever order the threads finish them. A malformed line is passed
+ * to the error handler and decoding goes on with the next one; without
+ * a handler it fails the whole decoding.
+ */
+public final class JsonLines<T> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public static final int BLOCK_SIZE = 256 * 1024;
+
+	private static final long STALL = 200 * 1000 * 1000L;
+
+	/**
+	 * Receives malformed lines, from any of the decoding threads.
+	 */
+	public interface Errors {
+		/**
+		 * @param offset Offset of the line in the input, in bytes
+		 */
+		void malformed(long offset, String line, JsonParseError error);
+	}
+
+	/**
+	 * Receives the values of a block of lines.
+	 */
+	public interface Batch<T> {
+		void decoded(List<T> values);
+	}
+
+	private final Class<T> type;
+	private JsonMapper mapper = new JsonMapper();
+	private Errors errors;
+	private boolean ordered = true;
+	private int blockSize = BLOCK_SIZE;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	public JsonLines(Class<T> type) {
+		this.type = type;
+	}
+
+	public void setMapper(JsonMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param errors Handler of malformed lines, null to fail on them
+	 */
+	public void setErrors(Errors errors) {
+		this.errors = errors;
+	}
+
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Size of the blocks the input is read in, lines longer than a
+	 * block get a larger one.
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Pool running the batch callbacks.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Parallel stream of the values of a UTF-8 encoded file, closing the
+	 * stream closes the file.
+	 */
+	public Stream<T> stream(Path file) throws IOException {
+		return stream(Files.newInputStream(file), Files.size(file));
+	}
+
+	/**
+	 * Parallel stream of the values of UTF-8 encoded input, closing the
+	 * stream closes the input.
+	 */
+	public Stream<T> stream(InputStream in) {
+		return stream(in, -1);
+	}
+
+	/**
+	 * Decodes all values, handing them over a block at a time. In
+	 * ordered mode the batch is called by one thread at a time in the
+	 * order of the input, otherwise concurrently.
+	 */
+	public void decode(InputStream in, final Batch<T> batch) throws IOException {
+		final Stream<List<T>> values = blocks(in, -1).map(new Function<Block, List<T>>() {
+			@Override
+			public List<T> apply(Block block) {
+				return decode(block);
+			}
+		});
+		final Consumer<List<T>> consumer = new Consumer<List<T>>() {
+			@Override
+			public void accept(List<T> list) {
+				batch.decoded(list);
+			}
+		};
+		try {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (ordered) {
+						values.forEachOrdered(consumer);
+					} else {
+						values.forEach(consumer);
+					}
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			values.close();
+		}
+	}
+
+	private Stream<T> stream(InputStream in, long size) {
+		return blocks(in, size).flatMap(new Function<Block, Stream<T>>() {
+			@Override
+			public Stream<T> apply(Block block) {
+				return decode(block).stream();
+			}
+		});
+	}
+
+	private Stream<Block> blocks(final InputStream in, long size) {
+		Stream<Block> blocks = StreamSupport.stream(new Blocks(in, size), true);
+		if (!ordered) {
+			blocks = blocks.unordered();
+		}
+		return blocks.onClose(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					in.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+	}
+
+	private List<T> decode(Block block) {
+		List<T> values = new ArrayList<T>();
+		byte[] bytes = block.bytes;
+		int start = 0;
+		while (start < block.length) {
+			int end = start;
+			while (end < block.length && bytes[end] != '\n') {
+				end++;
+			}
+			int last = end;
+			if (last > start && bytes[last - 1] == '\r') {
+				last--;
+			}
+			if (!blank(bytes, start, last)) {
+				try {
+					values.add(mapper.decode(ByteBuffer.wrap(bytes, start, last - start), type));
+				} catch (JsonParseError e) {
+					long offset = block.offset + start;
+					String line = new String(bytes, start, last - start, UTF8);
+					if (errors == null) {
+						throw new IllegalArgumentException("Malformed line at " + offset + ": " + e.getMessage(), e);
+					}
+					errors.malformed(offset, line, e);
+				}
+			}
+			start = end + 1;
+		}
+		return values;
+	}
+
+	private static boolean blank(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			byte b = bytes[i];
+			if (b != ' ' && b != '\t' && b != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whole lines of the input.
+	 */
+	private static final class Block {
+		final byte[] bytes;
+		final int length;
+		final long offset;
+
+		Block(byte[] bytes, int length, long offset) {
+			this.bytes = bytes;
+			this.length = length;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Reads the input a block at a time, each split is one block. The
+	 * bytes after the last newline of a block are carried over into the
+	 * next one.
+	 *
+	 * Splits are read ahead of the workers only up to a window of blocks
+	 * which no worker has taken up yet, beyond it splitting waits. A
+	 * stream which stopped early (e.g. <code>findFirst</code>) leaves its
+	 * blocks untaken, so the wait gives up once no block has been taken
+	 * for <code>STALL</code> nanoseconds.
+	 */
+	private final class Blocks implements Spliterator<Block>, ForkJoinPool.ManagedBlocker {
+		private final InputStream in;
+		private final long size;
+		private final int window = Math.max(2, 2 * pool.getParallelism());
+		private byte[] carry = new byte[0];
+		private int carried;
+		private long offset;
+		private int blocks;
+		private boolean done;
+		// guarded by this: split off blocks not taken yet and the time the last one was
+		private int untaken;
+		private long taken = System.nanoTime();
+
+		Blocks(InputStream in, long size) {
+			this.in = in;
+			this.size = size;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Block> action) {
+			Block block = next();
+			if (block == null) {
+				return false;
+			}
+			action.accept(block);
+			return true;
+		}
+
+		@Override
+		public Spliterator<Block> trySplit() {
+			try {
+				ForkJoinPool.managedBlock(this);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			Block block = next();
+			if (block == null) {
+				return null;
+			}
+			synchronized (this) {
+				untaken++;
+			}
+			return new One(block, this);
+		}
+
+		synchronized void taken() {
+			untaken--;
+			taken = System.nanoTime();
+			notifyAll();
+		}
+
+		@Override
+		public synchronized boolean isReleasable() {
+			return untaken < window || System.nanoTime() - taken > STALL;
+		}
+
+		@Override
+		public synchronized boolean block() throws InterruptedException {
+			while (!isReleasable()) {
+				wait(10);
+			}
+			return true;
+		}
+
+		@Override
+		public long estimateSize() {
+			if (done) {
+				return 0;
+			}
+			if (size < 0) {
+				// unknown, guess the rest is as long as what was read so far
+				return blocks + 1;
+			}
+			return Math.max(0, size - offset) / blockSize + 1;
+		}
+
+		@Override
+		public int characteristics() {
+			return (ordered ? ORDERED : 0) | NONNULL | IMMUTABLE;
+		}
+
+		private Block next() {
+			if (done) {
+				return null;
+			}
+			try {
+				byte[] bytes = new byte[Math.max(blockSize, carried * 2)];
+				System.arraycopy(carry, 0, bytes, 0, carried);
+				int length = carried;
+				int end;
+				while (true) {
+					int read = in.read(bytes, length, bytes.length - length);
+					if (read < 0) {
+						done = true;
+						end = length;
+						break;
+					}
+					length += read;
+					if (length < bytes.length) {
+						continue;
+					}
+					end = length;
+					while (end > 0 && bytes[end - 1] != '\n') {
+						end--;
+					}
+					if (end > 0) {
+						break;
+					}
+					// a line longer than the block
+					byte[] larger = new byte[bytes.length * 2];
+					System.arraycopy(bytes, 0, larger, 0, length);
+					bytes = larger;
+				}
+				carried = length - end;
+				if (carried > carry.length) {
+					carry = new byte[Math.max(carried, blockSize)];
+				}
+				System.arraycopy(bytes, end, carry, 0, carried);
+				Block block = new Block(bytes, end, offset);
+				offset += end;
+				blocks++;
+				if (end == 0) {
+					return null;
+				}
+				return block;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Split off block.
+	 */
+	private final class One implements Spliterator<Block> {
+		private Block block;
+		private final Blocks blocks;
+
+		One(Block block, Blocks blocks) {
+			this.block = block;
+			this.blocks = blocks;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Block> action) {
+			if (block == null) {
+				return false;
+			}
+			Block next = block;
+			block = null;
+			blocks.taken();
+			action.accept(next);
+			return true;
+		}
+
+		@Override
+		public Spliterator<Block> trySplit() {
+			return null;
+		}
+
+		@Override
+		public long estimateSize() {
+			return block == null ? 0 : 1;
+		}
+
+		@Override
+		public int characteristics() {
+			return (ordered ? ORDERED : 0) | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+		}
+	}
+}
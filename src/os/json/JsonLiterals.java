@@ -0,0 +1,179 @@
+package os.json;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of extension literals: unquoted calls like
+ * <code>BsonId(...)</code> or <code>ObjectId("...")</code> whose argument
+ * is turned into a value by a handler. Handlers are bound to method
+ * handles once, when they are registered.
+ *
+ * Registering is synchronized and publishes an immutable prefix trie of
+ * the names, so the tokenizer matches names against its input without
+ * locking and without building strings.
+ */
+public final class JsonLiterals {
+
+	private static final MethodType HANDLER = MethodType.methodType(Object.class, String.class);
+	private static final JsonLiterals DEFAULT = new JsonLiterals();
+
+	static {
+		try {
+			Class<?> bsonId = Class.forName("os.bson.BsonId");
+			DEFAULT.register("BsonId", bsonId);
+			DEFAULT.register("ObjectId", bsonId);
+		} catch (ClassNotFoundException e) {
+			// os-bson is optional
+		}
+	}
+
+	private static final class Node {
+		final char[] keys;
+		final Node[] children;
+		final MethodHandle handler;
+
+		Node(char[] keys, Node[] children, MethodHandle handler) {
+			this.keys = keys;
+			this.children = children;
+			this.handler = handler;
+		}
+
+		Node child(int ch) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == ch) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+	}
+
+	private final Map<String, MethodHandle> handlers = new LinkedHashMap<String, MethodHandle>();
+	private volatile Node root = new Node(new char[0], new Node[0], null);
+
+	/**
+	 * Literals used by the tokenizers unless they are given others.
+	 */
+	public static JsonLiterals getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Registers a handler taking the argument as a string.
+	 */
+	public void register(String name, MethodHandle handler) {
+		if (name.length() == 0) {
+			throw new IllegalArgumentException("Empty literal name");
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char ch = name.charAt(i);
+			if (!Character.isLetterOrDigit(ch) && ch != '_' && ch != '$' || ch > 0x7F) {
+				throw new IllegalArgumentException("Invalid literal name " + name);
+			}
+		}
+		handler = handler.asType(HANDLER);
+		synchronized (handlers) {
+			handlers.put(name, handler);
+			root = build(handlers, "");
+		}
+	}
+
+	/**
+	 * Registers a type built by its constructor taking a string. As before
+	 * with hacks, the argument itself is the value if the constructor
+	 * fails.
+	 */
+	public void register(String name, Class<?> type) {
+		MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class, String.class));
+		} catch (Exception e) {
+			throw new IllegalArgumentException(type.getName() + " has no public constructor taking a string", e);
+		}
+		MethodHandle fallback = MethodHandles.dropArguments(
+			MethodHandles.identity(String.class).asType(HANDLER), 0, Exception.class);
+		register(name, MethodHandles.catchException(constructor.asType(HANDLER), Exception.class, fallback));
+	}
+
+	public void register(final JSON.Hack hack) {
+		MethodHandle execute;
+		try {
+			execute = MethodHandles.publicLookup().findVirtual(JSON.Hack.class, "execute", HANDLER);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		register(hack.key(), execute.bindTo(hack));
+	}
+
+	public void remove(String name) {
+		synchronized (handlers) {
+			if (handlers.remove(name) != null) {
+				root = build(handlers, "");
+			}
+		}
+	}
+
+	public boolean contains(String name) {
+		synchronized (handlers) {
+			return handlers.containsKey(name);
+		}
+	}
+
+	/**
+	 * Calls the handler of a literal, returns null if there is none.
+	 */
+	public Object invoke(String name, String argument) {
+		MethodHandle handler;
+		synchronized (handlers) {
+			handler = handlers.get(name);
+		}
+		if (handler == null) {
+			return null;
+		}
+		try {
+			return (Object) handler.invokeExact(argument);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Finds the handler of the name the tokenizer has buffered between
+	 * <code>from</code> and <code>to</code>.
+	 */
+	MethodHandle find(JsonTokenizer tokenizer, int from, int to) {
+		Node node = root;
+		for (int i = from; i < to && node != null; i++) {
+			node = node.child(tokenizer.unit(i));
+		}
+		return node == null ? null : node.handler;
+	}
+
+	private static Node build(Map<String, MethodHandle> handlers, String prefix) {
+		StringBuilder keys = new StringBuilder();
+		for (String name : handlers.keySet()) {
+			if (name.length() > prefix.length() && name.startsWith(prefix)) {
+				char key = name.charAt(prefix.length());
+				if (keys.indexOf(String.valueOf(key)) < 0) {
+					keys.append(key);
+				}
+			}
+		}
+		char[] chars = keys.toString().toCharArray();
+		Arrays.sort(chars);
+		Node[] children = new Node[chars.length];
+		for (int i = 0; i < chars.length; i++) {
+			children[i] = build(handlers, prefix + chars[i]);
+		}
+		return new Node(chars, children, handlers.get(prefix));
+	}
+}
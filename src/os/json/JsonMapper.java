@@ -0,0 +1,167 @@
+package os.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Configured encoder and decoder. A mapper is immutable and can be shared
+ * by any number of threads; each thread gets its own buffers and symbol
+ * table which are reused from call to call, so in steady state a call
+ * only allocates the values it returns.
+ */
+public final class JsonMapper {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Boolean formated;
+	private final Boolean commented;
+	private final JsonLiterals literals;
+
+	private final JsonDecoder decoder = new JsonDecoder();
+	private final JsonEncoder encoder;
+
+	private final ThreadLocal<JsonBuffers> buffers = new ThreadLocal<JsonBuffers>() {
+		@Override
+		protected JsonBuffers initialValue() {
+			return new JsonBuffers();
+		}
+	};
+
+	public JsonMapper() {
+		this(false, false);
+	}
+
+	public JsonMapper(Boolean formated, Boolean commented) {
+		this(formated, commented, JsonLiterals.getDefault());
+	}
+
+	/**
+	 * @param literals Extension literals to recognize, null for none
+	 */
+	public JsonMapper(Boolean formated, Boolean commented, JsonLiterals literals) {
+		this.formated = formated;
+		this.commented = commented;
+		this.literals = literals;
+		this.encoder = new JsonEncoder(formated, commented);
+	}
+
+	public Boolean isFormated() {
+		return formated;
+	}
+
+	public Boolean isCommented() {
+		return commented;
+	}
+
+	public <T> T decode(String document, Class<T> type) throws JsonParseError {
+		JsonBuffers buffers = acquire();
+		try {
+			return decodeBuffered(new JsonTokenizer(new StringReader(document), buffers), type);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	public <T> T decode(byte[] document, Class<T> type) throws JsonParseError {
+		return decode(ByteBuffer.wrap(document), type);
+	}
+
+	/**
+	 * Decodes the remaining UTF-8 encoded bytes of the buffer.
+	 */
+	public <T> T decode(ByteBuffer document, Class<T> type) throws JsonParseError {
+		JsonBuffers buffers = acquire();
+		try {
+			return decodeBuffered(new JsonUtf8Tokenizer(document, buffers), type);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	public <T> T decode(Reader document, Class<T> type) throws IOException, JsonParseError {
+		JsonBuffers buffers = acquire();
+		try {
+			return decoder.decode(reader(new JsonTokenizer(document, buffers)), type);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	/**
+	 * Decodes UTF-8 encoded input.
+	 */
+	public <T> T decode(InputStream document, Class<T> type) throws IOException, JsonParseError {
+		JsonBuffers buffers = acquire();
+		try {
+			return decoder.decode(reader(new JsonUtf8Tokenizer(document, buffers)), type);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	public String encode(Object document) {
+		JsonBuffers buffers = acquire();
+		try {
+			JsonWriter writer = new JsonWriter(null, formated, buffers);
+			encoder.encode(document, writer);
+			return writer.toString();
+		} catch (IOException e) {
+			// in-memory writer never fails
+			throw new IllegalStateException(e);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	public void encode(Object document, Appendable out) throws IOException {
+		JsonBuffers buffers = acquire();
+		try {
+			JsonWriter writer = new JsonWriter(out, formated, buffers);
+			encoder.encode(document, writer);
+			writer.flush();
+		} finally {
+			release(buffers);
+		}
+	}
+
+	/**
+	 * Writes UTF-8 encoded output.
+	 */
+	public void encode(Object document, OutputStream out) throws IOException {
+		encode(document, new OutputStreamWriter(out, UTF8));
+	}
+
+	private <T> T decodeBuffered(JsonTokenizer tokenizer, Class<T> type) throws JsonParseError {
+		try {
+			return decoder.decode(reader(tokenizer), type);
+		} catch (IOException e) {
+			// reading from memory never fails
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private JsonReader reader(JsonTokenizer tokenizer) {
+		tokenizer.setLiterals(literals);
+		return new JsonReader(tokenizer);
+	}
+
+	private JsonBuffers acquire() {
+		JsonBuffers current = buffers.get();
+		if (current.busy) {
+			// a nested call, e.g. from a JsonDecodable
+			return new JsonBuffers();
+		}
+		current.busy = true;
+		return current;
+	}
+
+	private void release(JsonBuffers used) {
+		used.busy = false;
+	}
+}
@@ -0,0 +1,122 @@
+package os.json;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of member names, used to look names up directly
+ * in the tokenizer's input without building strings for them.
+ *
+ * The table is searched for a multiplier which sends every name to a
+ * slot of its own, so a lookup is a single probe. If no such multiplier
+ * is found the table falls back to linear probing.
+ */
+public final class JsonNames {
+
+	private static final int[] MULTIPLIERS = {
+		0x9E3779B1, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1,
+		0xD3A2646D, 0xFD7046C5, 0xB55A4F09, 0x7FEB352D, 0x846CA68B
+	};
+
+	private final String[] names;
+	private final int[] hashes;
+	// table of name index + 1, 0 marks a free slot
+	private final int[] table;
+	private final int multiplier;
+	private final int shift;
+	private final boolean perfect;
+
+	public JsonNames(String... names) {
+		this.names = names.clone();
+		this.hashes = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			hashes[i] = names[i].hashCode();
+		}
+		int bits = Integer.numberOfTrailingZeros(Integer.highestOneBit(Math.max(1, names.length) * 2) * 2);
+		// try a few multipliers at this size and at four times the size
+		int[] table = null;
+		int multiplier = 0;
+		for (int grow = 0; grow <= 2 && table == null; grow += 2) {
+			for (int i = 0; i < MULTIPLIERS.length && table == null; i++) {
+				multiplier = MULTIPLIERS[i];
+				table = place(multiplier, bits + grow, false);
+			}
+		}
+		this.perfect = table != null;
+		if (table == null) {
+			multiplier = MULTIPLIERS[0];
+			table = place(multiplier, bits, true);
+		}
+		this.table = table;
+		this.multiplier = multiplier;
+		this.shift = 32 - Integer.numberOfTrailingZeros(table.length);
+	}
+
+	/**
+	 * Builds the table, returns null on the first collision
+	 * unless probing is allowed.
+	 */
+	private int[] place(int multiplier, int bits, boolean probe) {
+		int[] table = new int[1 << bits];
+		int mask = table.length - 1;
+		for (int i = 0; i < names.length; i++) {
+			int slot = (hashes[i] * multiplier) >>> (32 - bits);
+			while (table[slot] != 0) {
+				if (!probe) {
+					return null;
+				}
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+		return table;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String get(int index) {
+		return names[index];
+	}
+
+	public int indexOf(String name) {
+		if (name == null) {
+			return -1;
+		}
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		for (int slot = (hash * multiplier) >>> shift; table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if (hashes[index] == hash && names[index].equals(name)) {
+				return index;
+			}
+			if (perfect) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the current token of the tokenizer, <code>hash</code> is
+	 * the string hash code computed over the token's units.
+	 */
+	int find(int hash, JsonTokenizer tokenizer) {
+		int mask = table.length - 1;
+		for (int slot = (hash * multiplier) >>> shift; table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if (hashes[index] == hash && tokenizer.matches(names[index])) {
+				return index;
+			}
+			if (perfect) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(names);
+	}
+}
@@ -0,0 +1,218 @@
+package os.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled set of JSON Pointers (RFC 6901) like <code>/user/ids/0</code>,
+ * extracted together in one pass over a document without decoding it.
+ * Member names are looked up with <code>JsonNames</code> directly in the
+ * input, subtrees which hold none of the pointers are skipped, and
+ * reading stops as soon as every pointer has been found, so the rest of
+ * the document is neither decoded nor checked.
+ *
+ * A compiled set is immutable and can be shared by any number of threads.
+ */
+public final class JsonPaths {
+
+	private static final JsonDecoder DECODER = new JsonDecoder();
+
+	private static final class Node {
+		// index of the pointer which ends here, -1 if none
+		int target = -1;
+		final List<String> keys = new ArrayList<String>();
+		final List<Node> children = new ArrayList<Node>();
+		JsonNames names;
+		// keys as array indexes, -1 if they are none
+		int[] indexes;
+
+		Node child(String key) {
+			int i = keys.indexOf(key);
+			if (i >= 0) {
+				return children.get(i);
+			}
+			Node child = new Node();
+			keys.add(key);
+			children.add(child);
+			return child;
+		}
+
+		void compile() {
+			names = new JsonNames(keys.toArray(new String[keys.size()]));
+			indexes = new int[keys.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = index(keys.get(i));
+				children.get(i).compile();
+			}
+		}
+
+		Node element(int index) {
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] == index) {
+					return children.get(i);
+				}
+			}
+			return null;
+		}
+	}
+
+	private final String[] pointers;
+	private final Class<?>[] types;
+	private final Node root = new Node();
+
+	public JsonPaths(String... pointers) {
+		this(pointers, new Class<?>[pointers.length]);
+	}
+
+	/**
+	 * @param types Type to decode each pointer's value to, null entries
+	 * decode to maps, lists and scalars
+	 */
+	public JsonPaths(String[] pointers, Class<?>[] types) {
+		if (types.length != pointers.length) {
+			throw new IllegalArgumentException("Expecting a type for each pointer");
+		}
+		this.pointers = pointers.clone();
+		this.types = types.clone();
+		for (int i = 0; i < pointers.length; i++) {
+			Node node = root;
+			for (String key : parse(pointers[i])) {
+				if (node.target >= 0) {
+					throw new IllegalArgumentException(pointers[node.target] + " is a prefix of " + pointers[i]);
+				}
+				node = node.child(key);
+			}
+			if (node.target >= 0 || !node.keys.isEmpty()) {
+				throw new IllegalArgumentException(pointers[i] + " overlaps another pointer");
+			}
+			node.target = i;
+		}
+		root.compile();
+	}
+
+	public int size() {
+		return pointers.length;
+	}
+
+	public String getPointer(int index) {
+		return pointers[index];
+	}
+
+	/**
+	 * Values of the pointers in the order they were given, null for
+	 * those which are not in the document.
+	 */
+	public Object[] extract(String document) throws JsonParseError {
+		return extractBuffered(new JsonReader(document));
+	}
+
+	public Object[] extract(byte[] document) throws JsonParseError {
+		return extractBuffered(new JsonReader(document));
+	}
+
+	private Object[] extractBuffered(JsonReader reader) throws JsonParseError {
+		try {
+			return extract(reader);
+		} catch (IOException e) {
+			// reading from memory never fails
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the next value of the reader, which is left wherever the
+	 * last pointer was found.
+	 */
+	public Object[] extract(JsonReader reader) throws IOException, JsonParseError {
+		Object[] values = new Object[pointers.length];
+		int[] remaining = {pointers.length};
+		if (reader.peek() == null) {
+			reader.syntaxError("Unexpected end of input");
+		}
+		if (remaining[0] > 0) {
+			walk(reader, root, values, remaining);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the next value looking for the pointers below the node,
+	 * returns true once all pointers have been found.
+	 */
+	private boolean walk(JsonReader reader, Node node, Object[] values, int[] remaining) throws IOException, JsonParseError {
+		if (node.target >= 0) {
+			values[node.target] = DECODER.read(reader, types[node.target]);
+			return --remaining[0] == 0;
+		}
+		JsonToken.Type type = reader.peek();
+		if (type == JsonToken.Type.LEFT_BRACE) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				int index = reader.nextName(node.names);
+				if (index < 0) {
+					reader.skipValue();
+				} else if (walk(reader, node.children.get(index), values, remaining)) {
+					return true;
+				}
+			}
+			reader.endObject();
+		} else if (type == JsonToken.Type.LEFT_BRACKET) {
+			reader.beginArray();
+			for (int i = 0; reader.hasNext(); i++) {
+				Node child = node.element(i);
+				if (child == null) {
+					reader.skipValue();
+				} else if (walk(reader, child, values, remaining)) {
+					return true;
+				}
+			}
+			reader.endArray();
+		} else {
+			reader.skipValue();
+		}
+		return false;
+	}
+
+	/**
+	 * Splits a pointer into its unescaped reference tokens.
+	 */
+	static List<String> parse(String pointer) {
+		List<String> keys = new ArrayList<String>();
+		if (pointer.length() == 0) {
+			return keys;
+		}
+		if (pointer.charAt(0) != '/') {
+			throw new IllegalArgumentException("Invalid JSON pointer " + pointer);
+		}
+		int from = 1;
+		while (true) {
+			int to = pointer.indexOf('/', from);
+			String key = pointer.substring(from, to < 0 ? pointer.length() : to);
+			if (key.indexOf('~') >= 0) {
+				key = key.replace("~1", "/").replace("~0", "~");
+			}
+			keys.add(key);
+			if (to < 0) {
+				return keys;
+			}
+			from = to + 1;
+		}
+	}
+
+	/**
+	 * Array index of a reference token: digits without leading zeros.
+	 */
+	private static int index(String key) {
+		if (key.length() == 0 || key.length() > 9 || key.length() > 1 && key.charAt(0) == '0') {
+			return -1;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			char ch = key.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return -1;
+			}
+		}
+		return Integer.parseInt(key);
+	}
+}
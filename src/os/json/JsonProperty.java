@@ -0,0 +1,243 @@
+package os.json;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import os.utils.Types;
+
+/**
+ * Accessors of a bean property. The getter and setter found by the usual
+ * naming convention are bound through <code>LambdaMetafactory</code>, so
+ * calls are plain interface calls the JIT can inline, and int, long and
+ * double properties get unboxed variants. Properties which can't be bound
+ * this way, e.g. of classes that are not public, go through
+ * <code>Types.Property</code>. Beans with a generated
+ * <code>JsonBinding</code> use that instead.
+ */
+final class JsonProperty {
+
+	static final int OBJECT = 0;
+	static final int INT    = 1;
+	static final int LONG   = 2;
+	static final int DOUBLE = 3;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	final String name;
+	final Class<?> type;
+	// one of the constants above, primitive accessors are only bound
+	// for properties of a primitive type
+	final int primitive;
+
+	private final Types.Property property;
+	private final JsonBinding<Object> binding;
+	private final int index;
+
+	private Function<Object, Object> getter;
+	private BiConsumer<Object, Object> setter;
+	private ToIntFunction<Object> intGetter;
+	private ToLongFunction<Object> longGetter;
+	private ToDoubleFunction<Object> doubleGetter;
+	private ObjIntConsumer<Object> intSetter;
+	private ObjLongConsumer<Object> longSetter;
+	private ObjDoubleConsumer<Object> doubleSetter;
+
+	JsonProperty(Class<?> bean, String name, Types.Property property) {
+		this.name = name;
+		this.type = property.getType();
+		this.primitive = primitive(type);
+		this.property = property;
+		this.binding = null;
+		this.index = -1;
+		if (visible(bean)) {
+			bind(bean);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	JsonProperty(JsonBinding<?> binding, int index) {
+		this.name = binding.names()[index];
+		this.type = binding.types()[index];
+		this.primitive = primitive(type);
+		this.property = null;
+		this.binding = (JsonBinding<Object>) binding;
+		this.index = index;
+	}
+
+	private static int primitive(Class<?> type) {
+		if (type == int.class) {
+			return INT;
+		} else if (type == long.class) {
+			return LONG;
+		} else if (type == double.class) {
+			return DOUBLE;
+		}
+		return OBJECT;
+	}
+
+	Object get(Object bean) {
+		if (getter != null) {
+			return getter.apply(bean);
+		}
+		if (binding != null) {
+			return binding.get(bean, index);
+		}
+		return property.invokeGetter(bean);
+	}
+
+	void set(Object bean, Object value) {
+		if (setter != null) {
+			setter.accept(bean, value);
+		} else if (binding != null) {
+			binding.set(bean, index, value);
+		} else {
+			property.invokeSetter(bean, value);
+		}
+	}
+
+	int getInt(Object bean) {
+		return intGetter != null ? intGetter.applyAsInt(bean) : (Integer) get(bean);
+	}
+
+	long getLong(Object bean) {
+		return longGetter != null ? longGetter.applyAsLong(bean) : (Long) get(bean);
+	}
+
+	double getDouble(Object bean) {
+		return doubleGetter != null ? doubleGetter.applyAsDouble(bean) : (Double) get(bean);
+	}
+
+	void setInt(Object bean, int value) {
+		if (intSetter != null) {
+			intSetter.accept(bean, value);
+		} else {
+			set(bean, value);
+		}
+	}
+
+	void setLong(Object bean, long value) {
+		if (longSetter != null) {
+			longSetter.accept(bean, value);
+		} else {
+			set(bean, value);
+		}
+	}
+
+	void setDouble(Object bean, double value) {
+		if (doubleSetter != null) {
+			doubleSetter.accept(bean, value);
+		} else {
+			set(bean, value);
+		}
+	}
+
+	/**
+	 * Generated accessors can only refer to public classes
+	 * which are loaded by our own class loader.
+	 */
+	private static boolean visible(Class<?> bean) {
+		for (Class<?> c = bean; c != null; c = c.getEnclosingClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		try {
+			return Class.forName(bean.getName(), false, JsonProperty.class.getClassLoader()) == bean;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void bind(Class<?> bean) {
+		String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		Method get = method(bean, "get" + suffix);
+		if (get == null && (type == boolean.class || type == Boolean.class)) {
+			get = method(bean, "is" + suffix);
+		}
+		Method set = method(bean, "set" + suffix, type);
+		try {
+			if (get != null && get.getReturnType() == type) {
+				MethodHandle handle = LOOKUP.unreflect(get);
+				getter = (Function<Object, Object>) lambda(Function.class, "apply",
+					MethodType.methodType(Object.class, Object.class), handle,
+					MethodType.methodType(wrap(type), bean));
+				switch (primitive) {
+					case INT:
+						intGetter = (ToIntFunction<Object>) lambda(ToIntFunction.class, "applyAsInt",
+							MethodType.methodType(int.class, Object.class), handle, handle.type());
+						break;
+					case LONG:
+						longGetter = (ToLongFunction<Object>) lambda(ToLongFunction.class, "applyAsLong",
+							MethodType.methodType(long.class, Object.class), handle, handle.type());
+						break;
+					case DOUBLE:
+						doubleGetter = (ToDoubleFunction<Object>) lambda(ToDoubleFunction.class, "applyAsDouble",
+							MethodType.methodType(double.class, Object.class), handle, handle.type());
+						break;
+				}
+			}
+			if (set != null) {
+				MethodHandle handle = LOOKUP.unreflect(set);
+				setter = (BiConsumer<Object, Object>) lambda(BiConsumer.class, "accept",
+					MethodType.methodType(void.class, Object.class, Object.class), handle,
+					MethodType.methodType(void.class, bean, wrap(type)));
+				switch (primitive) {
+					case INT:
+						intSetter = (ObjIntConsumer<Object>) lambda(ObjIntConsumer.class, "accept",
+							MethodType.methodType(void.class, Object.class, int.class), handle, handle.type());
+						break;
+					case LONG:
+						longSetter = (ObjLongConsumer<Object>) lambda(ObjLongConsumer.class, "accept",
+							MethodType.methodType(void.class, Object.class, long.class), handle, handle.type());
+						break;
+					case DOUBLE:
+						doubleSetter = (ObjDoubleConsumer<Object>) lambda(ObjDoubleConsumer.class, "accept",
+							MethodType.methodType(void.class, Object.class, double.class), handle, handle.type());
+						break;
+				}
+			}
+		} catch (Throwable e) {
+			// keep the reflective accessors
+			getter = null;
+			setter = null;
+			intGetter = null;
+			longGetter = null;
+			doubleGetter = null;
+			intSetter = null;
+			longSetter = null;
+			doubleSetter = null;
+		}
+	}
+
+	private static Object lambda(Class<?> face, String method, MethodType erased, MethodHandle target, MethodType instantiated) throws Throwable {
+		CallSite site = LambdaMetafactory.metafactory(LOOKUP, method, MethodType.methodType(face), erased, target, instantiated);
+		return site.getTarget().invoke();
+	}
+
+	private static Method method(Class<?> bean, String name, Class<?>... parameters) {
+		try {
+			Method method = bean.getMethod(name, parameters);
+			return Modifier.isStatic(method.getModifiers()) ? null : method;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return MethodType.methodType(type).wrap().returnType();
+	}
+}
@@ -0,0 +1,300 @@
+package os.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the values of UTF-8 encoded input: the elements of a
+ * top-level array, or else each top-level value, as in JSON Lines. The
+ * input is read a chunk at a time through a <code>JsonPushParser</code>
+ * and only while subscribers have outstanding demand, so no more than
+ * the values requested and those of one chunk are held at any time.
+ *
+ * Null values are skipped, a subscriber can't be handed null.
+ *
+ * Reading and delivery run on the executor, one task per subscription
+ * at a time. Reads from the input are managed blocks, a
+ * <code>ForkJoinPool</code> compensates for them. A file can be
+ * subscribed to any number of times, each subscription reads it anew; a
+ * stream only once. The input is closed when the subscription completes,
+ * fails or is cancelled.
+ */
+public final class JsonPublisher<T> implements Flow.Publisher<T> {
+
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	private final Path file;
+	private final InputStream stream;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+	private final Class<T> type;
+	private JsonMapper mapper = new JsonMapper();
+	private Executor executor = ForkJoinPool.commonPool();
+	private int chunkSize = CHUNK_SIZE;
+	private Boolean elements;
+
+	public JsonPublisher(Path file, Class<T> type) {
+		this.file = file;
+		this.stream = null;
+		this.type = type;
+	}
+
+	public JsonPublisher(InputStream stream, Class<T> type) {
+		this.file = null;
+		this.stream = stream;
+		this.type = type;
+	}
+
+	public void setMapper(JsonMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param elements true to publish the elements of a top-level array,
+	 * false to publish top-level values, null to tell by the first
+	 * character of the input
+	 */
+	public void setElements(Boolean elements) {
+		this.elements = elements;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		Subscription subscription = new Subscription(subscriber);
+		boolean again = file == null && !subscribed.compareAndSet(false, true);
+		if (again) {
+			subscription.failure = new IllegalStateException("A stream can only be subscribed to once");
+		}
+		if (file == null && !again) {
+			subscription.in = stream;
+		}
+		subscriber.onSubscribe(subscription);
+		if (again) {
+			subscription.signal();
+		}
+	}
+
+	private final class Subscription implements Flow.Subscription, Runnable, JsonPushParser.Values<T> {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		// number of times the subscription was signalled since the task last looked
+		private final AtomicInteger signals = new AtomicInteger();
+		private volatile boolean cancelled;
+		volatile Throwable failure;
+
+		// used by the task only
+		private final ArrayDeque<T> values = new ArrayDeque<T>();
+		private InputStream in;
+		private JsonPushParser<T> parser;
+		private byte[] chunk;
+		private long skipped;
+		private boolean ended;
+		private boolean terminated;
+
+		Subscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException("Requested " + n + " values");
+				signal();
+				return;
+			}
+			long current;
+			long next;
+			do {
+				current = requested.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!requested.compareAndSet(current, next));
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			signal();
+		}
+
+		@Override
+		public void decoded(T value) {
+			if (value != null) {
+				values.add(value);
+			}
+		}
+
+		void signal() {
+			if (signals.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!terminated) {
+					drain();
+				}
+				missed = signals.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			try {
+				while (true) {
+					if (cancelled) {
+						terminate();
+						return;
+					}
+					if (failure != null) {
+						terminate();
+						subscriber.onError(failure);
+						return;
+					}
+					if (!values.isEmpty()) {
+						if (requested.get() == 0) {
+							return;
+						}
+						requested.decrementAndGet();
+						subscriber.onNext(values.poll());
+					} else if (ended) {
+						terminate();
+						subscriber.onComplete();
+						return;
+					} else if (requested.get() == 0) {
+						return;
+					} else {
+						read();
+					}
+				}
+			} catch (IOException e) {
+				terminate();
+				subscriber.onError(e);
+			} catch (JsonParseError e) {
+				terminate();
+				subscriber.onError(e);
+			} catch (RuntimeException e) {
+				terminate();
+				subscriber.onError(e);
+			}
+		}
+
+		/**
+		 * Reads and parses the next chunk of the input.
+		 */
+		private void read() throws IOException, JsonParseError {
+			if (chunk == null) {
+				if (in == null) {
+					in = Files.newInputStream(file);
+				}
+				chunk = new byte[chunkSize];
+			}
+			int read = readBlocking(in, chunk);
+			if (read < 0) {
+				if (parser == null) {
+					parser = parser(elements != null && elements);
+					parser.skipped(skipped);
+				}
+				parser.end();
+				ended = true;
+				return;
+			}
+			int from = 0;
+			if (parser == null) {
+				while (from < read && isSpace(chunk[from])) {
+					from++;
+				}
+				if (from == read) {
+					// nothing but spaces so far
+					skipped += read;
+					return;
+				}
+				parser = parser(elements != null ? elements : chunk[from] == '[');
+				parser.skipped(skipped + from);
+			}
+			parser.feed(ByteBuffer.wrap(chunk, from, read - from));
+		}
+
+		private JsonPushParser<T> parser(boolean elements) {
+			JsonPushParser<T> parser = new JsonPushParser<T>(type, this);
+			parser.setMapper(mapper);
+			parser.setElements(elements);
+			return parser;
+		}
+
+		private void terminate() {
+			terminated = true;
+			values.clear();
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// the subscription is over
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads from the input as a managed block.
+	 */
+	private static int readBlocking(final InputStream in, final byte[] chunk) throws IOException {
+		final int[] read = {0};
+		final IOException[] error = {null};
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				private boolean done;
+
+				@Override
+				public boolean block() {
+					try {
+						read[0] = in.read(chunk);
+					} catch (IOException e) {
+						error[0] = e;
+					}
+					done = true;
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return done;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+		return read[0];
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+}
@@ -0,0 +1,320 @@
+package os.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Non-blocking decoder of UTF-8 encoded input which arrives in chunks,
+ * e.g. request bodies read on an event loop. Chunks are pushed in as
+ * they come, each is scanned once and the scanning state (nesting, open
+ * strings and comments) is kept between them. A value is decoded as soon
+ * as its last byte has arrived and handed to the handler from within
+ * <code>feed</code>.
+ *
+ * By default each top-level value of the input is decoded, which covers
+ * a single document as well as concatenated or line-delimited values.
+ * In elements mode the input is one top-level array and its elements
+ * are decoded one at a time, so only the element being received is ever
+ * held. A value which lies within one chunk is decoded from the chunk
+ * directly, only values spanning chunks are copied.
+ *
+ * The chunks only frame the values, binding doesn't advance with them:
+ * each value is buffered whole and decoded once its last byte arrived.
+ * A single large document is therefore held entirely before it is
+ * decoded, use elements mode to bound what is held to one element.
+ *
+ * A parser is not thread safe and can't be fed again once it failed.
+ */
+public final class JsonPushParser<T> {
+
+	/**
+	 * Receives the decoded values, in the order of the input.
+	 */
+	public interface Values<T> {
+		void decoded(T value);
+	}
+
+	// scanner states
+	private static final int VALUE           = 0;
+	private static final int STRING          = 1;
+	private static final int ESCAPE          = 2;
+	private static final int SLASH           = 3;
+	private static final int LINE_COMMENT    = 4;
+	private static final int BLOCK_COMMENT   = 5;
+	private static final int BLOCK_STAR      = 6;
+	private static final int SCALAR          = 7;
+	// within the parentheses of an extension literal like Id("a")
+	private static final int ARGUMENT        = 8;
+	private static final int ARGUMENT_STRING = 9;
+	private static final int ARGUMENT_ESCAPE = 10;
+
+	private final Class<T> type;
+	private final Values<? super T> values;
+	private JsonMapper mapper = new JsonMapper();
+	private boolean elements;
+
+	private int state = VALUE;
+	private int quote;
+	private int depth;
+	// a value is being received, from offset start
+	private boolean started;
+	private long start;
+	// elements mode: a value was read since the last comma
+	private boolean separated = true;
+	private boolean empty = true;
+	private boolean closed;
+	// bytes received so far
+	private long offset;
+	// head of a value which spans chunks
+	private byte[] pending = new byte[256];
+	private int length;
+
+	public JsonPushParser(Class<T> type, Values<? super T> values) {
+		this.type = type;
+		this.values = values;
+	}
+
+	public void setMapper(JsonMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param elements true if the input is an array whose elements are
+	 * to be decoded one by one
+	 */
+	public void setElements(boolean elements) {
+		if (offset > 0) {
+			throw new IllegalStateException("Input has been fed already");
+		}
+		this.elements = elements;
+	}
+
+	/**
+	 * Number of bytes fed so far.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Counts bytes which were consumed before the parser got the input,
+	 * so that error locations stay absolute.
+	 */
+	void skipped(long count) {
+		offset += count;
+	}
+
+	/**
+	 * Scans the remaining bytes of the chunk and decodes the values they
+	 * complete. The chunk is consumed, it can be reused once this returns.
+	 */
+	public void feed(ByteBuffer chunk) throws JsonParseError {
+		ByteBuffer bytes = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int from = bytes.position();
+		int limit = bytes.limit();
+		// start of the current value in this chunk
+		int head = started ? from : -1;
+		int level = elements ? 1 : 0;
+		for (int i = from; i < limit; i++) {
+			int b = bytes.get(i) & 0xFF;
+			switch (state) {
+				case VALUE:
+					if (b <= ' ') {
+						break;
+					}
+					if (b == '/') {
+						state = SLASH;
+						break;
+					}
+					if (started) {
+						if (b == '"' || b == '\'') {
+							state = STRING;
+							quote = b;
+						} else if (b == '[' || b == '{') {
+							depth++;
+						} else if ((b == ']' || b == '}') && --depth == level) {
+							complete(bytes, head, i + 1);
+							head = -1;
+						}
+						break;
+					}
+					if (elements && depth == 1) {
+						if (b == ',' && !separated) {
+							separated = true;
+							break;
+						}
+						if (b == ']' && (!separated || empty)) {
+							depth = 0;
+							closed = true;
+							break;
+						}
+					} else if (elements && depth == 0 && !closed && b == '[') {
+						depth = 1;
+						break;
+					}
+					if (closed) {
+						throw error("Unexpected characters left in input stream", i - from);
+					}
+					if (elements && depth == 0) {
+						throw error("Expecting a top-level array", i - from);
+					}
+					if (b == ',' || b == ':' || b == ']' || b == '}' || !separated) {
+						throw error("Unexpected " + (char) b, i - from);
+					}
+					started = true;
+					start = offset + i - from;
+					head = i;
+					if (b == '"' || b == '\'') {
+						state = STRING;
+						quote = b;
+					} else if (b == '[' || b == '{') {
+						depth++;
+					} else {
+						state = SCALAR;
+					}
+					break;
+				case STRING:
+					i = JsonScanner.special(bytes, i, limit, quote);
+					if (i == limit) {
+						break;
+					}
+					b = bytes.get(i);
+					if (b == '\\') {
+						state = ESCAPE;
+					} else if (b == quote) {
+						state = VALUE;
+						if (depth == level) {
+							complete(bytes, head, i + 1);
+							head = -1;
+						}
+					}
+					break;
+				case ESCAPE:
+					state = STRING;
+					break;
+				case SLASH:
+					if (b == '/') {
+						state = LINE_COMMENT;
+					} else if (b == '*') {
+						state = BLOCK_COMMENT;
+					} else {
+						throw error("Unexpected / encountered", i - from);
+					}
+					break;
+				case LINE_COMMENT:
+					if (b == '\n' || b == '\r') {
+						state = VALUE;
+					}
+					break;
+				case BLOCK_COMMENT:
+					if (b == '*') {
+						state = BLOCK_STAR;
+					}
+					break;
+				case BLOCK_STAR:
+					state = b == '/' ? VALUE : b == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+					break;
+				case SCALAR:
+					if (b == '(') {
+						state = ARGUMENT;
+						break;
+					}
+					if (b <= ' ' || b == ',' || b == ':' || b == ']' || b == '}' || b == '[' || b == '{'
+							|| b == '/' || b == '"' || b == '\'') {
+						state = VALUE;
+						complete(bytes, head, i);
+						head = -1;
+						// the delimiter belongs to what follows
+						i--;
+					}
+					break;
+				case ARGUMENT:
+					if (b == ')') {
+						state = SCALAR;
+					} else if (b == '"' || b == '\'') {
+						state = ARGUMENT_STRING;
+						quote = b;
+					}
+					break;
+				case ARGUMENT_STRING:
+					if (b == '\\') {
+						state = ARGUMENT_ESCAPE;
+					} else if (b == quote) {
+						state = ARGUMENT;
+					}
+					break;
+				case ARGUMENT_ESCAPE:
+					state = ARGUMENT_STRING;
+					break;
+			}
+		}
+		if (head >= 0) {
+			append(bytes, head, limit);
+		}
+		offset += limit - from;
+		chunk.position(limit);
+	}
+
+	/**
+	 * Signals the end of the input, a number or literal at the very end
+	 * is decoded now.
+	 */
+	public void end() throws JsonParseError {
+		if (state == SCALAR) {
+			state = VALUE;
+			complete(ByteBuffer.allocate(0), 0, 0);
+		}
+		if (started || state != VALUE && state != LINE_COMMENT || elements && !closed) {
+			throw new JsonParseError("Unexpected end of input", (int) Math.min(offset, Integer.MAX_VALUE), null);
+		}
+	}
+
+	/**
+	 * Decodes the value which ends at <code>to</code>, starting at
+	 * <code>head</code> or in an earlier chunk.
+	 */
+	private void complete(ByteBuffer bytes, int head, int to) throws JsonParseError {
+		ByteBuffer value;
+		if (length == 0) {
+			value = bytes.duplicate();
+			value.limit(to).position(head);
+		} else {
+			append(bytes, head, to);
+			value = ByteBuffer.wrap(pending, 0, length);
+		}
+		long at = start;
+		started = false;
+		separated = !elements;
+		empty = false;
+		length = 0;
+		if (pending.length > 64 * 1024) {
+			// don't hold on to the buffer of a large value
+			pending = new byte[256];
+		}
+		try {
+			values.decoded(mapper.decode(value, type));
+		} catch (JsonParseError e) {
+			throw new JsonParseError(e.getMessage(), (int) Math.min(at + e.getLocation(), Integer.MAX_VALUE), e.getText());
+		}
+	}
+
+	private void append(ByteBuffer bytes, int from, int to) {
+		int count = to - from;
+		if (length + count > pending.length) {
+			byte[] larger = new byte[Math.max(length + count, pending.length * 2)];
+			System.arraycopy(pending, 0, larger, 0, length);
+			pending = larger;
+		}
+		ByteBuffer source = bytes.duplicate();
+		source.limit(to).position(from);
+		source.get(pending, length, count);
+		length += count;
+	}
+
+	/**
+	 * @param index Index of the byte in the chunk being fed
+	 */
+	private JsonParseError error(String message, int index) {
+		return new JsonParseError(message, (int) Math.min(offset + index, Integer.MAX_VALUE), null);
+	}
+}
@@ -0,0 +1,423 @@
+package os.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Pull parser on top of <code>JsonTokenizer</code>. The caller walks the
+ * document with <code>peek()</code> and the <code>begin/end/next</code>
+ * methods, commas and colons are checked and consumed internally.
+ *
+ * Input is read in fixed-size chunks, so the memory used by the reader
+ * does not depend on the size of the document.
+ */
+public class JsonReader implements Closeable {
+
+	private static final int EMPTY_DOCUMENT    = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY       = 2;
+	private static final int NONEMPTY_ARRAY    = 3;
+	private static final int EMPTY_OBJECT      = 4;
+	private static final int DANGLING_NAME     = 5;
+	private static final int NONEMPTY_OBJECT   = 6;
+	private static final int EMPTY_ELEMENTS    = 7;
+	private static final int NONEMPTY_ELEMENTS = 8;
+
+	private final JsonTokenizer tokenizer;
+
+	private int[] stack = new int[32];
+	private int size = 1;
+
+	private JsonToken.Type peeked;
+	private boolean hasPeeked;
+
+	public JsonReader(String document) {
+		this(new JsonTokenizer(document));
+	}
+
+	public JsonReader(Reader reader) {
+		this(new JsonTokenizer(reader));
+	}
+
+	/**
+	 * Reads UTF-8 encoded input.
+	 */
+	public JsonReader(InputStream stream) {
+		this(new JsonUtf8Tokenizer(stream));
+	}
+
+	public JsonReader(byte[] document) {
+		this(new JsonUtf8Tokenizer(document));
+	}
+
+	public JsonReader(ByteBuffer document) {
+		this(new JsonUtf8Tokenizer(document));
+	}
+
+	/**
+	 * Reads a UTF-8 encoded file through memory mapped segments.
+	 */
+	public JsonReader(FileChannel channel) throws IOException {
+		this(new JsonUtf8Tokenizer(channel));
+	}
+
+	public JsonReader(JsonTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+		this.stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Returns the type of the next value without consuming it. Object
+	 * member names are reported as <code>NAME</code>, the end of the
+	 * document as <code>null</code>.
+	 */
+	@SuppressWarnings("fallthrough")
+	public JsonToken.Type peek() throws IOException, JsonParseError {
+		if (hasPeeked) {
+			return peeked;
+		}
+		JsonToken.Type next = tokenizer.next();
+		switch (stack[size - 1]) {
+			case EMPTY_DOCUMENT:
+				stack[size - 1] = NONEMPTY_DOCUMENT;
+				// fall through
+			case NONEMPTY_DOCUMENT:
+				// several values may follow each other
+				if (next == null) {
+					return peeked(null);
+				}
+				return value(next);
+			case EMPTY_ARRAY:
+				stack[size - 1] = NONEMPTY_ARRAY;
+				if (next == JsonToken.Type.RIGHT_BRACKET) {
+					return peeked(next);
+				}
+				return value(next);
+			case NONEMPTY_ARRAY:
+				checkToken(next);
+				if (next == JsonToken.Type.RIGHT_BRACKET) {
+					return peeked(next);
+				}
+				if (next != JsonToken.Type.COMMA) {
+					syntaxError("Expecting ] or , but found " + found());
+				}
+				return value(tokenizer.next());
+			case EMPTY_OBJECT:
+				checkToken(next);
+				if (next == JsonToken.Type.RIGHT_BRACE) {
+					return peeked(next);
+				}
+				// in non-strict mode an empty object is also a comma
+				// followed by a right brace
+				if (next == JsonToken.Type.COMMA) {
+					next = tokenizer.next();
+					checkToken(next);
+					if (next != JsonToken.Type.RIGHT_BRACE) {
+						syntaxError("Leading commas are not supported.  Expecting '}' but found " + found());
+					}
+					return peeked(next);
+				}
+				return name(next);
+			case DANGLING_NAME:
+				checkToken(next);
+				if (next != JsonToken.Type.COLON) {
+					syntaxError("Expecting : but found " + found());
+				}
+				stack[size - 1] = NONEMPTY_OBJECT;
+				return value(tokenizer.next());
+			case NONEMPTY_OBJECT:
+				checkToken(next);
+				if (next == JsonToken.Type.RIGHT_BRACE) {
+					return peeked(next);
+				}
+				if (next != JsonToken.Type.COMMA) {
+					syntaxError("Expecting } or , but found " + found());
+				}
+				next = tokenizer.next();
+				checkToken(next);
+				return name(next);
+			case EMPTY_ELEMENTS:
+				stack[size - 1] = NONEMPTY_ELEMENTS;
+				if (next == null) {
+					return peeked(null);
+				}
+				return value(next);
+			case NONEMPTY_ELEMENTS:
+				if (next == null) {
+					return peeked(null);
+				}
+				if (next != JsonToken.Type.COMMA) {
+					syntaxError("Expecting , but found " + found());
+				}
+				return value(tokenizer.next());
+			default:
+				throw new IllegalStateException();
+		}
+	}
+
+	public void beginObject() throws IOException, JsonParseError {
+		expect(JsonToken.Type.LEFT_BRACE);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException, JsonParseError {
+		expect(JsonToken.Type.RIGHT_BRACE);
+		size--;
+	}
+
+	public void beginArray() throws IOException, JsonParseError {
+		expect(JsonToken.Type.LEFT_BRACKET);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException, JsonParseError {
+		expect(JsonToken.Type.RIGHT_BRACKET);
+		size--;
+	}
+
+	/**
+	 * Reads the input as the comma separated elements of an array
+	 * without its brackets, e.g. a slice of a larger array. The elements
+	 * end with the input.
+	 */
+	void beginElements() {
+		push(EMPTY_ELEMENTS);
+	}
+
+	/**
+	 * Returns true if the current array or object has more elements.
+	 */
+	public boolean hasNext() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		return type != null && type != JsonToken.Type.RIGHT_BRACE && type != JsonToken.Type.RIGHT_BRACKET;
+	}
+
+	public String nextName() throws IOException, JsonParseError {
+		expect(JsonToken.Type.NAME);
+		return tokenizer.getString();
+	}
+
+	/**
+	 * Reads a member name and looks it up in the given set, plain names
+	 * are matched without building a string for them.
+	 *
+	 * @return The index of the name or -1 if it is not in the set
+	 */
+	public int nextName(JsonNames names) throws IOException, JsonParseError {
+		expect(JsonToken.Type.NAME);
+		return tokenizer.matchName(names);
+	}
+
+	/**
+	 * Returns a string value, numbers are returned as they are
+	 * written in the input.
+	 */
+	public String nextString() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type != JsonToken.Type.STRING && type != JsonToken.Type.NUMBER) {
+			syntaxError("Expecting string but found " + found());
+		}
+		hasPeeked = false;
+		return tokenizer.getString();
+	}
+
+	public boolean nextBoolean() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type != JsonToken.Type.TRUE && type != JsonToken.Type.FALSE) {
+			syntaxError("Expecting boolean but found " + found());
+		}
+		hasPeeked = false;
+		return type == JsonToken.Type.TRUE;
+	}
+
+	public void nextNull() throws IOException, JsonParseError {
+		expect(JsonToken.Type.NULL);
+	}
+
+	public double nextDouble() throws IOException, JsonParseError {
+		number();
+		return tokenizer.getDouble();
+	}
+
+	public long nextLong() throws IOException, JsonParseError {
+		number();
+		return tokenizer.getLong();
+	}
+
+	public BigDecimal nextBigDecimal() throws IOException, JsonParseError {
+		number();
+		return tokenizer.getBigDecimal();
+	}
+
+	public BigInteger nextBigInteger() throws IOException, JsonParseError {
+		number();
+		return tokenizer.getBigInteger();
+	}
+
+	public int nextInt() throws IOException, JsonParseError {
+		long value = nextLong();
+		if ((int) value != value) {
+			syntaxError("Expecting int but found " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Returns the next scalar value as an object: strings (or values
+	 * produced by JSON hacks), doubles, booleans or null.
+	 */
+	public Object nextValue() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type == null) {
+			syntaxError("Unexpected end of input");
+		}
+		switch (type) {
+			case STRING:
+				hasPeeked = false;
+				return tokenizer.getValue();
+			case NUMBER:
+				return nextDouble();
+			case TRUE:
+			case FALSE:
+				return nextBoolean();
+			case NULL:
+				nextNull();
+				return null;
+			default:
+				syntaxError("Unexpected " + found());
+				return null;
+		}
+	}
+
+	/**
+	 * Skips the next value, including nested arrays and objects. These
+	 * are passed over by the tokenizer without reading their tokens, so
+	 * skipping allocates nothing.
+	 */
+	public void skipValue() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type == null) {
+			syntaxError("Unexpected end of input");
+		}
+		switch (type) {
+			case LEFT_BRACE:
+			case LEFT_BRACKET:
+				hasPeeked = false;
+				tokenizer.skipValue();
+				break;
+			case RIGHT_BRACE:
+				endObject();
+				break;
+			case RIGHT_BRACKET:
+				endArray();
+				break;
+			default:
+				hasPeeked = false;
+		}
+	}
+
+	/**
+	 * Reads the next value as it is written in the input, including
+	 * nested arrays and objects. Where possible the text is a view of the
+	 * reader's buffer and not a copy, it is only valid until the reader
+	 * moves on; <code>toString()</code> keeps it.
+	 */
+	public CharSequence nextRaw() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type == null || type == JsonToken.Type.NAME || type == JsonToken.Type.RIGHT_BRACE || type == JsonToken.Type.RIGHT_BRACKET) {
+			syntaxError("Expecting a value but found " + found());
+		}
+		hasPeeked = false;
+		return tokenizer.getRaw();
+	}
+
+	/**
+	 * Table of shared strings used for names and short values.
+	 */
+	public JsonSymbols getSymbols() {
+		return tokenizer.getSymbols();
+	}
+
+	public void setSymbols(JsonSymbols symbols) {
+		tokenizer.setSymbols(symbols);
+	}
+
+	public void syntaxError(String message) throws JsonParseError {
+		tokenizer.parseError(message);
+	}
+
+	@Override
+	public void close() throws IOException {
+		tokenizer.close();
+	}
+
+	private void expect(JsonToken.Type type) throws IOException, JsonParseError {
+		if (peek() != type) {
+			syntaxError("Expecting " + type + " but found " + found());
+		}
+		hasPeeked = false;
+	}
+
+	private void number() throws IOException, JsonParseError {
+		JsonToken.Type type = peek();
+		if (type != JsonToken.Type.NUMBER && type != JsonToken.Type.STRING) {
+			syntaxError("Expecting number but found " + found());
+		}
+		hasPeeked = false;
+	}
+
+	private Object found() throws JsonParseError {
+		return tokenizer.getType() == null ? "end of input" : tokenizer.getValue();
+	}
+
+	private void push(int scope) {
+		if (size == stack.length) {
+			stack = Arrays.copyOf(stack, size * 2);
+		}
+		stack[size++] = scope;
+	}
+
+	private void checkToken(JsonToken.Type next) throws JsonParseError {
+		if (next == null) {
+			syntaxError("Unexpected end of input");
+		}
+	}
+
+	private JsonToken.Type name(JsonToken.Type next) throws JsonParseError {
+		if (next != JsonToken.Type.STRING) {
+			syntaxError("Expecting string but found " + found());
+		}
+		stack[size - 1] = DANGLING_NAME;
+		return peeked(JsonToken.Type.NAME);
+	}
+
+	private JsonToken.Type value(JsonToken.Type next) throws JsonParseError {
+		checkToken(next);
+		switch (next) {
+			case LEFT_BRACE:
+			case LEFT_BRACKET:
+			case STRING:
+			case NUMBER:
+			case TRUE:
+			case FALSE:
+			case NULL:
+				return peeked(next);
+			default:
+				syntaxError("Unexpected " + found());
+				return null;
+		}
+	}
+
+	private JsonToken.Type peeked(JsonToken.Type type) {
+		peeked = type;
+		hasPeeked = true;
+		return type;
+	}
+}
@@ -0,0 +1,101 @@
+package os.json;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the characters which end the plain runs of JSON text: quotes,
+ * backslashes, control characters and, between tokens, anything which is
+ * not a space. Bytes are classified eight at a time with SWAR arithmetic
+ * on <code>long</code> words, characters with a tight loop over the array.
+ *
+ * Shared by the tokenizers, which use it to find the end of strings and
+ * escapes, and by <code>JsonWriter</code>, which uses it to find the
+ * characters which have to be escaped.
+ */
+final class JsonScanner {
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+	private static final long SPACES = ONES * ' ';
+	private static final long BACKSLASHES = ONES * '\\';
+
+	private JsonScanner() {
+	}
+
+	/**
+	 * Index of the first quote, backslash or control character
+	 * between <code>from</code> and <code>to</code>, or <code>to</code>.
+	 */
+	static int special(char[] chars, int from, int to, int quote) {
+		for (int i = from; i < to; i++) {
+			char ch = chars[i];
+			if (ch < ' ' || ch == quote || ch == '\\') {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Same as above for bytes, the buffer must be little endian.
+	 */
+	static int special(ByteBuffer bytes, int from, int to, int quote) {
+		long quotes = ONES * (quote & 0xFF);
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long word = bytes.getLong(i);
+			long found = zero(word ^ quotes) | zero(word ^ BACKSLASHES) | below(word, ' ');
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < to; i++) {
+			int b = bytes.get(i) & 0xFF;
+			if (b < ' ' || b == quote || b == '\\') {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Index of the first character which is not a space,
+	 * or <code>to</code>.
+	 */
+	static int spaces(char[] chars, int from, int to) {
+		int i = from;
+		while (i < to && chars[i] == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	static int spaces(ByteBuffer bytes, int from, int to) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long other = bytes.getLong(i) ^ SPACES;
+			if (other != 0) {
+				return i + (Long.numberOfTrailingZeros(other) >>> 3);
+			}
+		}
+		while (i < to && bytes.get(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Sets the high bit of the lowest zero byte. Bytes above it may be
+	 * flagged too, which does not matter as only the lowest one is used.
+	 */
+	private static long zero(long word) {
+		return (word - ONES) & ~word & HIGHS;
+	}
+
+	/**
+	 * Same for bytes below <code>n</code>, which must be at most 128.
+	 */
+	private static long below(long word, int n) {
+		return (word - ONES * n) & ~word & HIGHS;
+	}
+}
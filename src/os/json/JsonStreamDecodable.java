@@ -0,0 +1,13 @@
+package os.json;
+
+import java.io.IOException;
+
+/**
+ * Decodes itself from the live reader instead of a copy of its text:
+ * either member by member with the pull methods or, through
+ * <code>nextRaw()</code>, from a view of its text. Exactly one value has
+ * to be read.
+ */
+public interface JsonStreamDecodable {
+	public void decodeJson(JsonReader reader) throws IOException, JsonParseError;
+}
@@ -0,0 +1,12 @@
+package os.json;
+
+import java.io.IOException;
+
+/**
+ * Encodes itself straight into the writer of the document being encoded
+ * instead of returning a string, formatting is applied by the writer.
+ * Exactly one value has to be written.
+ */
+public interface JsonStreamEncodable {
+	public void encodeJson(JsonWriter writer) throws IOException;
+}
@@ -0,0 +1,83 @@
+package os.json;
+
+import java.util.Arrays;
+
+/**
+ * Bounded table of shared strings for member names and short values.
+ * The tokenizer hashes a string token directly over its input and only
+ * builds a new <code>String</code> when the table does not already hold
+ * an equal one, so repeated keys and enum-like values are allocated once.
+ *
+ * The table is direct mapped, a new string replaces whatever occupied
+ * its slot. A table may be reused for many documents but is not thread
+ * safe.
+ */
+public final class JsonSymbols {
+
+	/**
+	 * Longer strings are never put into the table.
+	 */
+	public static final int MAX_LENGTH = 32;
+
+	private final String[] strings;
+	private final int[] hashes;
+	private final int mask;
+
+	private long hits;
+	private long misses;
+
+	public JsonSymbols() {
+		this(1024);
+	}
+
+	public JsonSymbols(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1) << 1);
+		this.strings = new String[size];
+		this.hashes = new int[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Number of strings which were found in the table.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of strings which had to be built.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	public void clear() {
+		Arrays.fill(strings, null);
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Returns the shared string for the current token of the tokenizer
+	 * which spans <code>from</code> to <code>to</code>, <code>hash</code>
+	 * is the string hash code computed over the token's units.
+	 */
+	String find(int hash, JsonTokenizer tokenizer, int from, int to) {
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		String string = strings[slot];
+		if (string != null && hashes[slot] == hash && tokenizer.matches(string)) {
+			hits++;
+			return string;
+		}
+		misses++;
+		string = tokenizer.text(from, to);
+		strings[slot] = string;
+		hashes[slot] = hash;
+		return string;
+	}
+
+	@Override
+	public String toString() {
+		return "JsonSymbols[hits=" + hits + ", misses=" + misses + "]";
+	}
+}
@@ -50,7 +50,8 @@ public final class JsonToken {
 		NULL,
 		STRING,
 		NUMBER,
-		NAN;
+		NAN,
+		NAME;
 	}
 
 	public Type type;
@@ -32,336 +32,755 @@
 
 package os.json;
 
-public class JsonTokenizer
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits JSON text into tokens. The tokenizer works as a cursor, 
+ * <code>next()</code> moves to the next token and the value of the
+ * current token is only materialized when it is asked for. Numbers and
+ * booleans are read into primitive slots and structural tokens have no
+ * value at all, so moving the cursor does not allocate anything.
+ * <code>getNextToken()</code> still returns a new token object for
+ * every token for callers which want them.
+ * 
+ * This class reads characters, <code>JsonUtf8Tokenizer</code> reads
+ * UTF-8 encoded bytes, everything except the storage of the input 
+ * is shared between them.
+ */
+public class JsonTokenizer implements Closeable
 {
+	protected static final int BUFFER_SIZE = 8192;
+	
+	// powers of ten which are exact doubles
+	private static final double[] POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	// largest mantissa which can still take one more digit
+	private static final long MANTISSA_LIMIT = (Long.MAX_VALUE - 9) / 10;
+	
+	private Reader reader;
+	private char[] buffer;
 	
+	// position of the next unit and end of the buffered input
+	protected int pos;
+	protected int limit;
+	// number of units dropped from the front of the buffer so far
+	protected long offset;
+	// start of the token being read, kept in the buffer on refill
+	protected int mark = -1;
 	
+	// highest unit value that is a character by itself
+	private final int plain;
 	
-	private String jsonString;
-	private int loc;
-	private char ch;
+	// the current token, its first unit and the extent of its content
+	private JsonToken.Type type;
+	private int token;
+	private int start;
+	private int end;
+	private boolean escaped;
+	private boolean integral;
+	// the current number as mantissa * 10^exponent, truncated
+	// if the mantissa did not fit into a long
+	private long mantissa;
+	private int exponent;
+	private boolean negative;
+	private boolean truncated;
+	private Object value;
+	private boolean materialized;
 	
-	//private const controlCharsRegExp:RegExp = /[\x00-\x1F]/;
+	protected final StringBuilder scratch;
+	
+	// extension literals, JsonLiterals.getDefault() unless set
+	private JsonLiterals literals = JsonLiterals.getDefault();
+	
+	// shared strings for short tokens, created on first use
+	private JsonSymbols symbols;
+	private boolean useSymbols = true;
 	
 	/**
-	 * Constructs a new JSONDecoder to parse a JSON string
+	 * Constructs a new tokenizer to parse a JSON string
 	 * into a native object.
 	 *
 	 * @param s The JSON string to be converted
 	 *		into a native object
 	 */
 	public JsonTokenizer( String s) {
-		jsonString = s;
-		loc = 0;
-		nextChar();
+		this(new StringReader(s), Math.max(16, Math.min(s.length(), BUFFER_SIZE)));
+	}
+	
+	/**
+	 * Constructs a new tokenizer reading the input in
+	 * fixed-size chunks, so the whole document is never
+	 * held in memory.
+	 */
+	public JsonTokenizer( Reader reader ) {
+		this(reader, BUFFER_SIZE);
+	}
+	
+	private JsonTokenizer( Reader reader, int size ) {
+		this.reader = reader;
+		this.buffer = new char[size];
+		this.plain = Character.MAX_VALUE;
+		this.scratch = new StringBuilder();
+	}
+	
+	/**
+	 * Reads through the buffers of a mapper.
+	 */
+	JsonTokenizer( Reader reader, JsonBuffers buffers ) {
+		this.reader = reader;
+		this.buffer = buffers.chars;
+		this.plain = Character.MAX_VALUE;
+		this.scratch = buffers.text;
+		this.symbols = buffers.symbols;
+	}
+	
+	/**
+	 * Reads characters which are all in memory, the array is used as
+	 * the buffer.
+	 */
+	JsonTokenizer( char[] chars ) {
+		this.buffer = chars;
+		this.limit = chars.length;
+		this.plain = Character.MAX_VALUE;
+		this.scratch = new StringBuilder();
+	}
+	
+	/**
+	 * Constructor for tokenizers with their own storage. Units up
+	 * to <code>plain</code> map directly to characters.
+	 */
+	protected JsonTokenizer( int plain ) {
+		this.plain = plain;
+		this.scratch = new StringBuilder();
+	}
+	
+	JsonTokenizer( int plain, JsonBuffers buffers ) {
+		this.plain = plain;
+		this.scratch = buffers.text;
+		this.symbols = buffers.symbols;
 	}
 	
 	/**
 	 * Gets the next token in the input sting and advances
-	 * the character to the next character after the token
+	 * to the first character after the token
 	 * @throws JsonParseError 
 	 */
-	public JsonToken getNextToken() throws JsonParseError
+	public JsonToken getNextToken() throws IOException, JsonParseError
 	{
-		
-		JsonToken token = null;
+		JsonToken.Type type = next();
+		if ( type == null ){
+			return null;
+		}
+		return JsonToken.create( type, getValue() );
+	}
+	
+	/**
+	 * Moves to the next token and returns its type, or null
+	 * at the end of the input.
+	 */
+	public JsonToken.Type next() throws IOException, JsonParseError
+	{
+		value = null;
+		materialized = false;
 		
 		// skip any whitespace / comments since the last 
 		// token was read
-		skipIgnored();
-		int lastLoc = 0;
+		int ch = skipIgnored();
+		
 		// examine the new character and see what we have...
 		switch ( ch )
 		{
+			case -1:
+				// reached the end of the input
+				token = pos;
+				return type = null;
 			case '{':
-				token = JsonToken.create( JsonToken.Type.LEFT_BRACE, ch );
-				nextChar();
-			break;
+				token = pos++;
+				return type = JsonToken.Type.LEFT_BRACE;
 			case '}':
-				token = JsonToken.create( JsonToken.Type.RIGHT_BRACE, ch );
-				nextChar();
-			break;
+				token = pos++;
+				return type = JsonToken.Type.RIGHT_BRACE;
 			case '[':
-				token = JsonToken.create( JsonToken.Type.LEFT_BRACKET, ch );
-				nextChar();
-			break;
+				token = pos++;
+				return type = JsonToken.Type.LEFT_BRACKET;
 			case ']':
-				token = JsonToken.create( JsonToken.Type.RIGHT_BRACKET, ch );
-				nextChar();
-			break;
+				token = pos++;
+				return type = JsonToken.Type.RIGHT_BRACKET;
 			case ',':
-				token = JsonToken.create( JsonToken.Type.COMMA, ch );
-				nextChar();
-			break;
+				token = pos++;
+				return type = JsonToken.Type.COMMA;
 			case ':':
-				token = JsonToken.create( JsonToken.Type.COLON, ch );
-				nextChar();
-			break;
-			case 't': // attempt to read true
-				lastLoc = loc;
-				String possibleTrue = "t" + nextChar() + nextChar() + nextChar();
-				if ( possibleTrue == "true" ){
-					token = JsonToken.create( JsonToken.Type.TRUE, true );
-					nextChar();
-				}else{
-					loc = lastLoc;
-				}
-			break;
-			case 'f': // attempt to read false
-				lastLoc = loc;
-				String possibleFalse = "f" + nextChar() + nextChar() + nextChar() + nextChar();
-				
-				if ( possibleFalse == "false" )
-				{
-					token = JsonToken.create( JsonToken.Type.FALSE, false );
-					nextChar();
-				}else{
-					loc = lastLoc;
-				}
-			break;
-			case 'n': // attempt to read null
-				lastLoc = loc;
-				String possibleNull = "n" + nextChar() + nextChar() + nextChar();
-				if ( possibleNull == "null" ){
-					token = JsonToken.create( JsonToken.Type.NULL, null );
-					nextChar();
-				}else{
-					loc = lastLoc;
-				}
-				break;
-			case '\"': 
+				token = pos++;
+				return type = JsonToken.Type.COLON;
+			case '"': 
 			case '\'': 
-				token = readString();
-			break;
+				readString( ch );
+				return type = JsonToken.Type.STRING;
 			default:
 				// see if we can read a number
 				if ( isDigit( ch ) || ch == '-' ){
-					token = readNumber();
+					readNumber();
+					return type = JsonToken.Type.NUMBER;
 				}
-				else if ( ch == 0 ){
-					// check for reading past the end of the string
-					token = null;
-				}else {
-					String possibleKeyString = ""+ch;
-					while(isKeyChar(nextChar())){
-						possibleKeyString = possibleKeyString+ch;
-					}
-					if(possibleKeyString.matches("[a-zA-Z09]+\\(.*\\)")){
-						String hackName = possibleKeyString.substring(0,possibleKeyString.indexOf('('));
-						if(JSON.hasHack(hackName)){
-							token = JsonToken.create(JsonToken.Type.STRING,JSON.getHack(hackName).execute(possibleKeyString.substring(
-								possibleKeyString.indexOf('(')+1,
-								possibleKeyString.indexOf(')')
-							)));
+				if ( isKeyChar( ch ) ){
+					return type = readWord();
+				}
+				parseError( "Unexpected " + (char) ch + " encountered" );
+				return null;
+		}
+	}
+	
+	/**
+	 * Type of the current token.
+	 */
+	public JsonToken.Type getType(){
+		return type;
+	}
+	
+	/**
+	 * Value of the current token: strings (or whatever a JSON hack
+	 * returned), the text of numbers, booleans, null or the
+	 * structural character.
+	 */
+	public Object getValue() throws JsonParseError {
+		if ( !materialized ){
+			if ( type == null ){
+				value = null;
+			}else{
+				switch ( type ){
+					case STRING:
+						if ( escaped ){
+							value = unescape( start, end );
+						}else if ( end - start <= JsonSymbols.MAX_LENGTH && useSymbols ){
+							value = symbol();
+						}else{
+							value = text( start, end );
 						}
-					}else{
-						token = JsonToken.create(JsonToken.Type.STRING,possibleKeyString);	
-					}
-					
+						break;
+					case NUMBER:
+						value = text( start, end );
+						break;
+					case TRUE:
+						value = Boolean.TRUE;
+						break;
+					case FALSE:
+						value = Boolean.FALSE;
+						break;
+					case NULL:
+						value = null;
+						break;
+					default:
+						value = (char) unit( token );
 				}
+			}
+			materialized = true;
 		}
-		return token;
+		return value;
 	}
-
-	private JsonToken readString() throws JsonParseError{
-		// Rather than examine the string character-by-character, it's
-		// faster to use indexOf to try to and find the closing quote character
-		// and then replace escape sequences after the fact.
-		
-		// Start at the current input stream position
+	
+	/**
+	 * Position of the first character of the current token in the input.
+	 */
+	public long getTokenStart(){
+		return offset + token;
+	}
+	
+	/**
+	 * Position right after the current token in the input.
+	 */
+	public long getTokenEnd(){
+		return offset + pos;
+	}
+	
+	/**
+	 * Value of the current <code>TRUE</code> or <code>FALSE</code> token.
+	 */
+	public boolean getBoolean() throws JsonParseError {
+		if ( type != JsonToken.Type.TRUE && type != JsonToken.Type.FALSE ){
+			parseError( "Expecting boolean but found " + getValue() );
+		}
+		return type == JsonToken.Type.TRUE;
+	}
+	
+	/**
+	 * True if the current number has neither a fraction nor an exponent.
+	 */
+	public boolean isIntegral(){
+		return type == JsonToken.Type.NUMBER && integral;
+	}
+	
+	/**
+	 * Value of the current number, read directly from the input. Strings
+	 * holding a number are accepted too.
+	 */
+	public long getLong() throws JsonParseError {
+		if ( type == JsonToken.Type.NUMBER && integral && !truncated ){
+			return negative ? -mantissa : mantissa;
+		}
+		String number = numberText();
+		try {
+			return Long.parseLong( number );
+		} catch ( NumberFormatException e ) {
+			// fractions and exponents, exact or not at all
+			try {
+				return new BigDecimal( number ).longValueExact();
+			} catch ( NumberFormatException notNumber ) {
+				parseError( "Expecting number but found " + number );
+			} catch ( ArithmeticException notLong ) {
+				parseError( "Expecting long but found " + number );
+			}
+			return 0;
+		}
+	}
+	
+	/**
+	 * Value of the current number. When both the mantissa and the power
+	 * of ten are exact doubles a single multiplication or division is
+	 * correctly rounded, everything else goes through the JDK parser.
+	 */
+	public double getDouble() throws JsonParseError {
+		if ( type == JsonToken.Type.NUMBER && !truncated && mantissa < 1L << 53 ){
+			double value = -1;
+			if ( mantissa == 0 ){
+				value = 0;
+			}else if ( exponent >= 0 && exponent < POWERS.length ){
+				value = mantissa * POWERS[exponent];
+			}else if ( exponent < 0 && -exponent < POWERS.length ){
+				value = mantissa / POWERS[-exponent];
+			}
+			if ( value >= 0 ){
+				return negative ? -value : value;
+			}
+		}
+		String number = numberText();
+		try {
+			return Double.parseDouble( number );
+		} catch ( NumberFormatException e ) {
+			parseError( "Expecting number but found " + number );
+			return 0;
+		}
+	}
+	
+	/**
+	 * Exact value of the current number.
+	 */
+	public BigDecimal getBigDecimal() throws JsonParseError {
+		if ( type == JsonToken.Type.NUMBER && !truncated && Math.abs( exponent ) < 10000 ){
+			return BigDecimal.valueOf( negative ? -mantissa : mantissa, -exponent );
+		}
+		String number = numberText();
+		try {
+			return new BigDecimal( number );
+		} catch ( NumberFormatException e ) {
+			parseError( "Expecting number but found " + number );
+			return null;
+		}
+	}
+	
+	public BigInteger getBigInteger() throws JsonParseError {
+		if ( type == JsonToken.Type.NUMBER && integral && !truncated ){
+			return BigInteger.valueOf( negative ? -mantissa : mantissa );
+		}
+		BigDecimal value = getBigDecimal();
+		try {
+			return value.toBigIntegerExact();
+		} catch ( ArithmeticException e ) {
+			parseError( "Expecting integer but found " + value );
+			return null;
+		}
+	}
+	
+	private String numberText() throws JsonParseError {
+		if ( type != JsonToken.Type.NUMBER && type != JsonToken.Type.STRING ){
+			parseError( "Expecting number but found " + getValue() );
+		}
+		return getString();
+	}
+	
+	/**
+	 * Text of the current string or number token.
+	 */
+	public String getString() throws JsonParseError {
+		Object value = getValue();
+		return value == null ? null : value.toString();
+	}
+	
+	/**
+	 * Sets the extension literals to recognize, <code>null</code>
+	 * turns them off.
+	 */
+	public void setLiterals( JsonLiterals literals ){
+		this.literals = literals;
+	}
+	
+	/**
+	 * Table used to share the strings of short tokens.
+	 */
+	public JsonSymbols getSymbols(){
+		if ( symbols == null && useSymbols ){
+			symbols = new JsonSymbols();
+		}
+		return symbols;
+	}
+	
+	/**
+	 * Sets the table of shared strings, e.g. to keep one table for many
+	 * documents of the same kind. <code>null</code> turns sharing off.
+	 */
+	public void setSymbols( JsonSymbols symbols ){
+		this.symbols = symbols;
+		this.useSymbols = symbols != null;
+	}
+	
+	private String symbol(){
+		int hash = 0;
+		for ( int i = start; i < end; i++ ){
+			int ch = unit( i );
+			if ( ch > plain ){
+				return text( start, end );
+			}
+			hash = 31 * hash + ch;
+		}
+		return getSymbols().find( hash, this, start, end );
+	}
+	
+	/**
+	 * Looks the current string token up in a set of names. Names which
+	 * only contain plain units are compared against the input directly,
+	 * without building a string first.
+	 * 
+	 * @return The index of the name or -1 if it is not in the set
+	 */
+	public int matchName( JsonNames names ) throws JsonParseError {
+		if ( type != JsonToken.Type.STRING || escaped || materialized ){
+			return names.indexOf( getString() );
+		}
+		int hash = 0;
+		for ( int i = start; i < end; i++ ){
+			int ch = unit( i );
+			if ( ch > plain ){
+				return names.indexOf( getString() );
+			}
+			hash = 31 * hash + ch;
+		}
+		return names.find( hash, this );
+	}
+	
+	/**
+	 * True if the current token is a string equal to the name.
+	 */
+	boolean isName( String name ) throws JsonParseError {
+		if ( type != JsonToken.Type.STRING ){
+			return false;
+		}
+		if ( !escaped && !materialized && plain( start, end ) ){
+			return matches( name );
+		}
+		return name.equals( getString() );
+	}
+	
+	private boolean plain( int from, int to ){
+		for ( int i = from; i < to; i++ ){
+			if ( unit( i ) > plain ){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves the cursor to a position of input which is all buffered,
+	 * the next token is read from there.
+	 */
+	void seek( int position ){
+		pos = position;
+		mark = -1;
+		type = null;
+		value = null;
+		materialized = false;
+	}
+	
+	/**
+	 * Compares the current plain token with a name.
+	 */
+	boolean matches( String name ){
+		int length = end - start;
+		if ( name.length() != length ){
+			return false;
+		}
+		for ( int i = 0; i < length; i++ ){
+			if ( unit( start + i ) != name.charAt( i ) ){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads an unquoted word, which is either one of the literals,
+	 * an extension literal like <code>BsonId(...)</code> or an
+	 * unquoted string.
+	 */
+	private JsonToken.Type readWord() throws IOException, JsonParseError {
+		mark = pos++;
+		int ch;
+		while ( isKeyChar( ch = peekChar( 0 ) ) && ch != '(' && ch != ')' ){
+			pos++;
+		}
+		if ( ch == '(' && literals != null ){
+			MethodHandle literal = literals.find( this, mark, pos );
+			if ( literal != null ){
+				return readLiteral( literal );
+			}
+		}
+		// unquoted strings may contain parentheses
+		while ( isKeyChar( peekChar( 0 ) ) ){
+			pos++;
+		}
+		token = start = mark;
+		end = pos;
+		escaped = false;
+		mark = -1;
 		
-		int quoteIndex = loc;
-		do
+		if ( matches( "true" ) ){
+			return JsonToken.Type.TRUE;
+		}
+		if ( matches( "false" ) ){
+			return JsonToken.Type.FALSE;
+		}
+		if ( matches( "null" ) ){
+			return JsonToken.Type.NULL;
+		}
+		return JsonToken.Type.STRING;
+	}
+	
+	/**
+	 * Reads the argument of an extension literal, either a quoted
+	 * string or the raw text up to the closing parenthesis, and
+	 * hands it to the literal's handler.
+	 */
+	private JsonToken.Type readLiteral( MethodHandle literal ) throws IOException, JsonParseError {
+		// the mark stays on the start of the literal until the closing
+		// parenthesis, refills must not drop it
+		// move past the opening parenthesis
+		pos++;
+		int ch = skipIgnored();
+		String argument;
+		if ( ch == '"' || ch == '\'' ){
+			readString( ch );
+			argument = escaped ? unescape( start, end ) : text( start, end );
+			ch = skipIgnored();
+		}else{
+			int from = pos - mark;
+			while ( ch != ')' && ch != -1 ){
+				pos++;
+				ch = peekChar( 0 );
+			}
+			argument = text( mark + from, pos ).trim();
+		}
+		if ( ch != ')' ){
+			parseError( "Expecting ) after the literal argument" );
+		}
+		pos++;
+		token = mark;
+		mark = -1;
+		start = end = pos;
+		escaped = false;
+		try {
+			value = (Object) literal.invokeExact( argument );
+		} catch ( Throwable e ) {
+			parseError( "Literal failed on " + argument + ": " + e );
+		}
+		materialized = true;
+		return JsonToken.Type.STRING;
+	}
+	
+	/**
+	 * Finds the end of a quoted string. Escape sequences are
+	 * only replaced when the value is asked for.
+	 */
+	private void readString( int quote ) throws IOException, JsonParseError {
+		// a mark set by the caller (the start of a literal) is kept,
+		// the quote is then found relative to it
+		boolean marked = mark >= 0;
+		if ( !marked ){
+			mark = pos;
+		}
+		int quoted = pos - mark;
+		// move past the opening quote
+		pos++;
+		escaped = false;
+		while ( true )
 		{
-			// Find the next quote in the input stream
-			quoteIndex = jsonString.indexOf( ch, quoteIndex );
-			
-			if ( quoteIndex >= 0 )
-			{
-				// We found the next double quote character in the string, but we need
-				// to make sure it is not part of an escape sequence.
-				
-				// Keep looping backwards while the previous character is a backslash
-				int backspaceCount = 0;
-				int backspaceIndex = quoteIndex - 1;
-				while ( jsonString.charAt( backspaceIndex ) == '\\' )
-				{
-					backspaceCount++;
-					backspaceIndex--;
+			// jump over the plain part of the string
+			pos = scan( pos, limit, quote );
+			if ( pos == limit ){
+				if ( !fill() ){
+					parseError( "Unterminated string literal" );
 				}
-				
-				// If we have an even number of backslashes, that means this is the ending quote 
-				if ( ( backspaceCount & 1 ) == 0 )
-				{
-					break;
-				}
-				
-				// At this point, the quote was determined to be part of an escape sequence
-				// so we need to move past the quote index to look for the next one
-				quoteIndex++;
+				continue;
 			}
-			else // There are no more quotes in the string and we haven't found the end yet
-			{
-				parseError( "Unterminated string literal" );
+			int ch = unit( pos++ );
+			if ( ch == quote ){
+				break;
 			}
-		} while ( true );
-		
-		// Unescape the string
-		// the token for the string we'll try to read
-		JsonToken token = JsonToken.create( 
-				JsonToken.Type.STRING,
-				// Attach resulting string to the token to return it
-				unescapeString( jsonString.substring( loc, quoteIndex) ) );
-		
-		// Move past the closing quote in the input string.  This updates the next
-		// character in the input stream to be the character one after the closing quote
-		loc = quoteIndex + 1;
-		nextChar();
-		
-		return token;
+			if ( ch == '\\' ){
+				// the escaped character can never close the string
+				escaped = true;
+				if ( pos == limit && !fill() ){
+					parseError( "Unterminated string literal" );
+				}
+				pos++;
+			}
+		}
+		token = mark + quoted;
+		start = token + 1;
+		end = pos - 1;
+		if ( !marked ){
+			mark = -1;
+		}
 	}
 	
 	public String unescapeString( String input ) throws JsonParseError{
-		
-		String result = "";
-		int backslashIndex = 0;
-		int nextSubstringStartPosition = 0;
-		int len = input.length();
-		do
+		return new JsonTokenizer( input ).unescape( input );
+	}
+	
+	private String unescape( String input ) throws JsonParseError {
+		try {
+			while ( fill() ){
+				// keep the whole input in the buffer
+			}
+		} catch ( IOException e ) {
+			throw new IllegalStateException( e );
+		}
+		return unescape( 0, limit );
+	}
+	
+	private String unescape( int from, int to ) throws JsonParseError {
+		StringBuilder result = scratch;
+		result.setLength( 0 );
+		int next = from;
+		for ( int i = scan( from, to, '\\' ); i < to; i = scan( i + 1, to, '\\' ) )
 		{
-			// Find the next backslash in the input
-			backslashIndex = input.indexOf( '\\', nextSubstringStartPosition );
+			if ( unit( i ) != '\\' ){
+				continue;
+			}
+			appendText( result, next, i );
+			if ( i + 1 == to ){
+				// a trailing backslash has nothing to escape
+				next = i;
+				break;
+			}
 			
-			if ( backslashIndex >= 0 )
+			// Check the next character so we know what to escape
+			int escapedChar = unit( ++i );
+			switch ( escapedChar )
 			{
-				result += input.substring( nextSubstringStartPosition, backslashIndex );
+				// Try to list the most common expected cases first to improve performance
 				
-				// Move past the backslash and next character (all escape sequences are
-				// two characters, except for \\u, which will advance this further)
-				nextSubstringStartPosition = backslashIndex + 2;
+				case '"':
+				case '\'':
+				case '\\':
+				case '/':
+					result.append( (char) escapedChar );
+					break; // quotation mark, reverse solidus and solidus
+				case 'n':
+					result.append( '\n' );
+					break; // newline
+				case 'r':
+					result.append( '\r' );
+					break; // carriage return
+				case 't':
+					result.append( '\t' );
+					break; // horizontal tab	
+				case 'f':
+					result.append( '\f' );
+					break; // form feed
+				case 'b':
+					result.append( '\b' );
+					break; // bell
 				
-				// Check the next character so we know what to escape
-				char escapedChar = input.charAt( backslashIndex + 1 );
-				switch ( escapedChar )
-				{
-					// Try to list the most common expected cases first to improve performance
-					
-					case '"':
-						result += escapedChar;
-						break; // quotation mark
-					case '\\':
-						result += escapedChar;
-						break; // reverse solidus	
-					case 'n':
-						result += '\n';
-						break; // newline
-					case 'r':
-						result += '\r';
-						break; // carriage return
-					case 't':
-						result += '\t';
-						break; // horizontal tab	
-					
-					// Convert a unicode escape sequence to it's character value
-					case 'u':
-						
-						// Save the characters as a string we'll convert to an int
-						String hexValue = "";
-						
-						int unicodeEndPosition = nextSubstringStartPosition + 4;
-						
-						// Make sure there are enough characters in the string leftover
-						if ( unicodeEndPosition > len )
-						{
-							parseError( "Unexpected end of input.  Expecting 4 hex digits after \\u." );
-						}
-						
-						// Try to find 4 hex characters
-						for ( int i = nextSubstringStartPosition; i < unicodeEndPosition; i++ )
+				// Convert a unicode escape sequence to it's character value
+				case 'u':
+					// Make sure there are enough characters in the string leftover
+					if ( i + 4 >= to )
+					{
+						parseError( "Unexpected end of input.  Expecting 4 hex digits after \\u." );
+					}
+					int code = 0;
+					for ( int j = i + 1; j <= i + 4; j++ )
+					{
+						// get the next character and determine
+						// if it's a valid hex digit or not
+						int possibleHexChar = unit( j );
+						if ( !isHexDigit( possibleHexChar ) )
 						{
-							// get the next character and determine
-							// if it's a valid hex digit or not
-							char possibleHexChar = input.charAt( i );
-							if ( !isHexDigit( possibleHexChar ) )
-							{
-								parseError( "Excepted a hex digit, but found: " + possibleHexChar );
-							}
-							
-							// Valid hex digit, add it to the value
-							hexValue += possibleHexChar;
+							parseError( "Excepted a hex digit, but found: " + (char) possibleHexChar );
 						}
-						
-						// Convert hexValue to an integer, and use that
-						// integer value to create a character to add
-						// to our string.
-						result += String.valueOf(Integer.parseInt(hexValue, 16 ));
-						
-						// Move past the 4 hex digits that we just read
-						nextSubstringStartPosition = unicodeEndPosition;
-						break;
-					
-					case 'f':
-						result += '\f';
-						break; // form feed
-					case '/':
-						result += '/';
-						break; // solidus
-					case 'b':
-						result += '\b';
-						break; // bell
-					default:
-						result += '\\' + escapedChar; // Couldn't unescape the sequence, so just pass it through
-				}
-			}
-			else
-			{
-				// No more backslashes to replace, append the rest of the string
-				result += input.substring( nextSubstringStartPosition );
-				break;
+						code = ( code << 4 ) + Character.digit( possibleHexChar, 16 );
+					}
+					result.append( (char) code );
+					// Move past the 4 hex digits that we just read
+					i += 4;
+					break;
+				default:
+					// Couldn't unescape the sequence, so just pass it through
+					result.append( '\\' );
+					next = i;
+					continue;
 			}
-			
-		} while ( nextSubstringStartPosition < len );
-		
-		return result;
+			next = i + 1;
+		}
+		appendText( result, next, to );
+		return result.toString();
 	}
 	
 	/**
 	 * Attempts to read a number from the input string.  Places
 	 * the character location at the first character after the
 	 * number.
-	 *
-	 * @return The JSONToken with the number value if a number could
-	 * 		be read.  Throws an error otherwise.
+	 * 
 	 * @throws JsonParseError 
 	 */
-	private final JsonToken readNumber() throws JsonParseError {
-		
-		// the string to accumulate the number characters
-		// into that we'll convert to a number at the end
-		String input = "";
+	private void readNumber() throws IOException, JsonParseError {
+		mark = pos;
+		integral = true;
+		negative = false;
+		truncated = false;
+		mantissa = 0;
+		exponent = 0;
 		
 		// check for a negative number
-		if ( ch == '-' )
+		if ( peekChar( 0 ) == '-' )
 		{
-			input += '-';
-			nextChar();
+			pos++;
+			negative = true;
 		}
 		
 		// the number must start with a digit
-		if ( !isDigit( ch ) )
+		if ( !isDigit( peekChar( 0 ) ) )
 		{
 			parseError( "Expecting a digit" );
 		}
 		
 		// 0 can only be the first digit if it
 		// is followed by a decimal point
-		if ( ch == '0' )
+		if ( peekChar( 0 ) == '0' )
 		{
-			input += ch;
-			nextChar();
+			pos++;
 			
 			// make sure no other digits come after 0
-			if ( isDigit( ch ) )
+			if ( isDigit( peekChar( 0 ) ) )
 			{
 				parseError( "A digit cannot immediately follow 0" );
 			}
@@ -369,213 +788,390 @@ public class JsonTokenizer
 		else
 		{
 			// read numbers while we can
-			while ( isDigit( ch ) )
-			{
-				input += ch;
-				nextChar();
-			}
+			readDigits( false );
 		}
 		
 		// check for a decimal value
-		if ( ch == '.' )
+		if ( peekChar( 0 ) == '.' )
 		{
-			input += '.';
-			nextChar();
+			pos++;
+			integral = false;
 			
 			// after the decimal there has to be a digit
-			if ( !isDigit( ch ) )
+			if ( !isDigit( peekChar( 0 ) ) )
 			{
 				parseError( "Expecting a digit" );
 			}
 			
 			// read more numbers to get the decimal value
-			while ( isDigit( ch ) )
-			{
-				input += ch;
-				nextChar();
-			}
+			readDigits( true );
 		}
 		
 		// check for scientific notation
+		int ch = peekChar( 0 );
 		if ( ch == 'e' || ch == 'E' )
 		{
-			input += "e";
-			nextChar();
+			pos++;
+			integral = false;
 			// check for sign
+			ch = peekChar( 0 );
+			boolean negativeExponent = ch == '-';
 			if ( ch == '+' || ch == '-' )
 			{
-				input += ch;
-				nextChar();
+				pos++;
 			}
 			
 			// require at least one number for the exponent
 			// in this case
-			if ( !isDigit( ch ) )
+			if ( !isDigit( peekChar( 0 ) ) )
 			{
 				parseError( "Scientific notation number needs exponent value" );
 			}
 			
-			// read in the exponent
-			while ( isDigit( ch ) )
-			{
-				input += ch;
-				nextChar();
+			// read in the exponent, huge values only need
+			// to stay huge
+			int power = 0;
+			while ( isDigit( ch = peekChar( 0 ) ) ){
+				pos++;
+				if ( power < 100000 ){
+					power = power * 10 + ( ch - '0' );
+				}
 			}
+			exponent += negativeExponent ? -power : power;
 		}
-		return JsonToken.create( JsonToken.Type.NUMBER, input );
+		token = start = mark;
+		end = pos;
+		mark = -1;
 	}
 	
-	private char nextChar() {
-		try{
-			return ch = jsonString.charAt( loc++ );
-		}catch(IndexOutOfBoundsException ex){
-			return ch = 0;
+	/**
+	 * Reads digits into the mantissa, digits which do not fit
+	 * are dropped and only move the exponent.
+	 */
+	private void readDigits( boolean fraction ) throws IOException {
+		int ch;
+		while ( isDigit( ch = peekChar( 0 ) ) ){
+			pos++;
+			if ( mantissa <= MANTISSA_LIMIT ){
+				mantissa = mantissa * 10 + ( ch - '0' );
+				if ( fraction ){
+					exponent--;
+				}
+			}else{
+				truncated = true;
+				if ( !fraction ){
+					exponent++;
+				}
+			}
 		}
 	}
 	
-	private void skipIgnored() throws JsonParseError {
-		int originalLoc;
-		do {
-			originalLoc = loc;
-			skipWhite();
-			skipComments();
-		} while ( originalLoc != loc );
+	/**
+	 * Returns the unit <code>ahead</code> positions after the
+	 * current one without consuming it, or -1 at the end of input.
+	 */
+	protected final int peekChar( int ahead ) throws IOException {
+		while ( pos + ahead >= limit ){
+			if ( !fill() ){
+				return -1;
+			}
+		}
+		return unit( pos + ahead );
 	}
 	
-	private void skipComments() throws JsonParseError {
-		if ( ch == '/' ) {
-			// Advance past the first / to find out what type of comment
-			nextChar();
-			switch ( ch )
-			{
-				case '/': // single-line comment, read through end of line
-					
-					// Loop over the characters until we find
-					// a newline or until there's no more characters left
-					do
-					{
-						nextChar();
-					} while ( ch != '\n' && ch != 0 );
-					
-					// move past the \n
-					nextChar();
-					
-					break;
+	/**
+	 * Returns the buffered unit at the given index.
+	 */
+	protected int unit( int index ){
+		return buffer[index];
+	}
+	
+	/**
+	 * Builds a string from the buffered units between
+	 * <code>from</code> and <code>to</code>.
+	 */
+	protected String text( int from, int to ){
+		return new String( buffer, from, to - from );
+	}
+	
+	protected void appendText( StringBuilder builder, int from, int to ){
+		builder.append( buffer, from, to - from );
+	}
+	
+	/**
+	 * Index of the first quote, backslash or control character
+	 * between <code>from</code> and <code>to</code>, or <code>to</code>.
+	 */
+	protected int scan( int from, int to, int quote ){
+		return JsonScanner.special( buffer, from, to, quote );
+	}
+	
+	/**
+	 * Index of the first unit which is not a space, or <code>to</code>.
+	 */
+	protected int skipSpaces( int from, int to ){
+		return JsonScanner.spaces( buffer, from, to );
+	}
+	
+	/**
+	 * Reads the next chunk of input into the buffer. Everything before
+	 * the current position (or the mark) is dropped, the buffer only
+	 * grows when a single token does not fit into it.
+	 */
+	protected boolean fill() throws IOException {
+		if ( reader == null ){
+			return false;
+		}
+		int keep = discard();
+		if ( keep > 0 ){
+			System.arraycopy( buffer, keep, buffer, 0, limit );
+		}
+		if ( limit == buffer.length ){
+			buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+		}
+		int read = reader.read( buffer, limit, buffer.length - limit );
+		if ( read < 0 ){
+			// the reader belongs to the caller, it is left open
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+	
+	/**
+	 * Moves the positions as if everything before the current position
+	 * (or the mark) was dropped from the buffer, returns the number of
+	 * dropped units which the caller has to move out of the way.
+	 */
+	protected final int discard(){
+		int keep = mark >= 0 ? mark : pos;
+		if ( keep > 0 ){
+			offset += keep;
+			limit -= keep;
+			pos -= keep;
+			if ( mark >= 0 ){
+				mark = 0;
+			}
+		}
+		return keep;
+	}
+	
+	/**
+	 * Skips whitespace and comments and returns the next character
+	 * without consuming it, or -1 at the end of input.
+	 */
+	private int skipIgnored() throws IOException, JsonParseError {
+		while ( true ) {
+			pos = skipSpaces( pos, limit );
+			int ch = peekChar( 0 );
+			if ( isWhiteSpace( ch ) ){
+				pos++;
+			}else if ( ch == '/' ){
+				skipComment();
+			}else{
+				return ch;
+			}
+		}
+	}
+	
+	private void skipComment() throws IOException, JsonParseError {
+		// Advance past the first / to find out what type of comment
+		pos++;
+		switch ( peekChar( 0 ) )
+		{
+			case '/': // single-line comment, read through end of line
+				
+				// Loop over the characters until we find
+				// a newline or until there's no more characters left
+				int ch;
+				do
+				{
+					pos++;
+					ch = peekChar( 0 );
+				} while ( ch != '\n' && ch != -1 );
+				break;
+			
+			case '*': // multi-line comment, read until closing */
+				
+				// move past the opening *
+				pos++;
 				
-				case '*': // multi-line comment, read until closing */
-					
-					// move past the opening *
-					nextChar();
-					
-					// try to find a trailing */
-					while ( true )
+				// try to find a trailing */
+				while ( true )
+				{
+					ch = peekChar( 0 );
+					if ( ch == -1 )
 					{
-						if ( ch == '*' )
-						{
-							// check to see if we have a closing /
-							nextChar();
-							if ( ch == '/' )
-							{
-								// move past the end of the closing */
-								nextChar();
-								break;
-							}
-						}
-						else
-						{
-							// move along, looking if the next character is a *
-							nextChar();
-						}
-						
 						// when we're here we've read past the end of 
 						// the string without finding a closing */, so error
-						if ( ch == 0 )
-						{
-							parseError( "Multi-line comment not closed" );
-						}
+						parseError( "Multi-line comment not closed" );
 					}
-					
-					break;
-				
-				// Can't match a comment after a /, so it's a parsing error
-				default:
-					parseError( "Unexpected " + ch + " encountered (expecting '/' or '*' )" );
-			}
+					pos++;
+					if ( ch == '*' && peekChar( 0 ) == '/' )
+					{
+						// move past the end of the closing */
+						pos++;
+						break;
+					}
+				}
+				break;
+			
+			// Can't match a comment after a /, so it's a parsing error
+			default:
+				parseError( "Unexpected " + (char) peekChar( 0 ) + " encountered (expecting '/' or '*' )" );
 		}
-	
 	}
 	
-	private void skipWhite(){
-		while (isWhiteSpace(ch)){
-			nextChar();
-		}
+	private boolean isKeyChar( int ch ) {
+		return ch=='$' || ch=='_' || ch=='.' || ch=='(' || ch==')' || (ch >= '0' && ch <= '9') ||  (ch >= 'a' && ch <= 'z') ||  (ch >= 'A' && ch <= 'Z');
 	}
 	
-	private Boolean isKeyChar(char ch) {
-		if ( ch=='$' || ch=='_' || ch=='.' || ch=='(' || ch==')' || (ch >= '0' && ch <= '9') ||  (ch >= 'a' && ch <= 'z') ||  (ch >= 'A' && ch <= 'Z') ){
-			return true;
-		}
-		return false;
+	private boolean isWhiteSpace( int ch ) {
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r';
 	}
 	
-	private Boolean isWhiteSpace(char ch) {
-		if ( ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' ){
-			return true;
-		}
-		return false;
+	private boolean isDigit( int ch ){
+		return ch >= '0' && ch <= '9';
 	}
 	
-	private Boolean isDigit( char ch){
-		return ( ch >= '0' && ch <= '9' );
+	private boolean isHexDigit( int ch ) {
+		return isDigit( ch ) || ( ch >= 'A' && ch <= 'F' ) || ( ch >= 'a' && ch <= 'f' );
 	}
 	
-	private Boolean isHexDigit( char ch ) {
-		return ( isDigit( ch ) || ( ch >= 'A' && ch <= 'F' ) || ( ch >= 'a' && ch <= 'f' ) );
+	/**
+	 * Position of the next character in the whole input.
+	 */
+	public long getLocation(){
+		return offset + pos;
 	}
 	
 	public void parseError(String message) throws JsonParseError{
-		throw new JsonParseError( message, loc, jsonString );
+		// only the buffered part of the input around the error is still available
+		int from = Math.max( 0, pos - 1024 );
+		int to = Math.min( limit, pos + 1024 );
+		throw new JsonParseError( message, (int) Math.min( getLocation(), Integer.MAX_VALUE ), text( from, to ) );
 	}
 
-	public String getObjectString() {
-		int d=1;
-		String str = "";
-		switch(jsonString.charAt(loc-1)){
-			case '{': {
-				while(d>0){
-					if(ch==0){
-						break;
-					}else
-					if(ch=='}'){
-						d--;
-					}else 
-					if(ch=='{'){
-						d++;
-					}
-					str+=ch;
-					nextChar();	
+	/**
+	 * Skips the rest of the value which starts with the current token.
+	 * Arrays and objects are passed over up to their closing bracket
+	 * without reading tokens: strings are only scanned for their closing
+	 * quote and nothing but brackets and comments is looked at, so
+	 * nothing is allocated. Skipped content is not validated beyond
+	 * that. The closing bracket is the current token afterwards.
+	 */
+	public void skipValue() throws IOException, JsonParseError {
+		if ( type != JsonToken.Type.LEFT_BRACE && type != JsonToken.Type.LEFT_BRACKET ){
+			return;
+		}
+		skipContainer();
+		value = null;
+		materialized = false;
+		type = unit( token ) == '}' ? JsonToken.Type.RIGHT_BRACE : JsonToken.Type.RIGHT_BRACKET;
+	}
+	
+	/**
+	 * Moves past the closing bracket of the container the cursor is in,
+	 * the mark is left alone.
+	 */
+	private void skipContainer() throws IOException, JsonParseError {
+		int depth = 1;
+		while ( depth > 0 ){
+			if ( pos == limit && !fill() ){
+				parseError( "Unexpected end of input" );
+			}
+			int ch = unit( pos );
+			switch ( ch ){
+				case '{':
+				case '[':
+					depth++;
+					pos++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					token = pos++;
+					break;
+				case '"':
+				case '\'':
+					skipString( ch );
+					break;
+				case '/':
+					skipComment();
+					break;
+				default:
+					pos++;
+			}
+		}
+	}
+	
+	private void skipString( int quote ) throws IOException, JsonParseError {
+		pos++;
+		while ( true ){
+			pos = scan( pos, limit, quote );
+			if ( pos == limit ){
+				if ( !fill() ){
+					parseError( "Unterminated string literal" );
 				}
-				break;
+				continue;
 			}
-			case '[': {
-				while(d>0){
-					if(ch==0){
-						break;
-					}else
-					if(ch==']'){
-						d--;
-					}else 
-					if(ch=='['){
-						d++;
-					}
-					str+=ch;
-					nextChar();	
+			int ch = unit( pos++ );
+			if ( ch == quote ){
+				return;
+			}
+			if ( ch == '\\' ){
+				if ( pos == limit && !fill() ){
+					parseError( "Unterminated string literal" );
 				}
-				break;
+				pos++;
 			}
 		}
+	}
+	
+	/**
+	 * Text of the value which starts with the current token as it is
+	 * written in the input, arrays and objects are read up to their
+	 * closing bracket. Where possible the text is a view of the buffer
+	 * rather than a copy, it is only valid until the tokenizer moves on.
+	 */
+	public CharSequence getRaw() throws IOException, JsonParseError {
+		mark = token;
+		skipValue();
+		CharSequence raw = slice( mark, pos );
+		mark = -1;
+		return raw;
+	}
+	
+	/**
+	 * View of the buffered units between <code>from</code> and
+	 * <code>to</code>.
+	 */
+	protected CharSequence slice( int from, int to ){
+		return CharBuffer.wrap( buffer, from, to - from );
+	}
+	
+	/**
+	 * Reads the rest of the container which was opened by the last
+	 * token, up to and including its closing character. Unterminated
+	 * input is returned up to its end.
+	 */
+	public String getObjectString() throws IOException {
+		mark = pos;
+		try {
+			skipContainer();
+		} catch ( JsonParseError e ) {
+			// nothing left to read
+		}
+		String str = text( mark, pos );
+		mark = -1;
 		return str;
 	}
+	
+	@Override
+	public void close() throws IOException {
+		if ( reader != null ){
+			reader.close();
+			reader = null;
+		}
+	}
 }
-
-
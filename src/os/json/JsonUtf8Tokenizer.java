@@ -0,0 +1,292 @@
+package os.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Tokenizer working directly on UTF-8 encoded bytes. Structural
+ * characters, numbers and literals are all ASCII, so only the strings
+ * which are actually asked for are ever decoded.
+ */
+public class JsonUtf8Tokenizer extends JsonTokenizer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private InputStream stream;
+	private FileChannel channel;
+	private long size;
+	private int segment;
+	private ByteBuffer bytes;
+	// backing array of the buffer if it has one
+	private byte[] array;
+	private int base;
+
+	public JsonUtf8Tokenizer(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	public JsonUtf8Tokenizer(byte[] bytes, int offset, int length) {
+		this(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	/**
+	 * Reads the remaining bytes of the buffer, the buffer's
+	 * position is not changed.
+	 */
+	public JsonUtf8Tokenizer(ByteBuffer bytes) {
+		super(0x7F);
+		use(bytes.slice());
+		limit = this.bytes.limit();
+	}
+
+	/**
+	 * Reads the stream in fixed-size chunks.
+	 */
+	public JsonUtf8Tokenizer(InputStream stream) {
+		super(0x7F);
+		this.stream = stream;
+		use(ByteBuffer.allocate(BUFFER_SIZE));
+	}
+
+	/**
+	 * Reads through the buffers of a mapper.
+	 */
+	JsonUtf8Tokenizer(ByteBuffer bytes, JsonBuffers buffers) {
+		super(0x7F, buffers);
+		use(bytes.slice());
+		limit = this.bytes.limit();
+	}
+
+	JsonUtf8Tokenizer(InputStream stream, JsonBuffers buffers) {
+		super(0x7F, buffers);
+		this.stream = stream;
+		use(ByteBuffer.wrap(buffers.bytes));
+	}
+
+	/**
+	 * Reads a file by mapping it into memory segment by segment,
+	 * starting at the channel's current position. The input is parsed
+	 * in place, so it never takes up heap space.
+	 */
+	public JsonUtf8Tokenizer(FileChannel channel) throws IOException {
+		this(channel, SEGMENT_SIZE);
+	}
+
+	public JsonUtf8Tokenizer(FileChannel channel, int segment) throws IOException {
+		super(0x7F);
+		this.channel = channel;
+		this.size = channel.size();
+		this.segment = segment;
+		this.offset = channel.position();
+		use(ByteBuffer.allocate(0));
+	}
+
+	private void use(ByteBuffer bytes) {
+		// the scanner reads little endian words
+		this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+		if (bytes.hasArray()) {
+			array = bytes.array();
+			base = bytes.arrayOffset();
+		} else {
+			array = null;
+		}
+	}
+
+	@Override
+	protected int unit(int index) {
+		if (array != null) {
+			return array[base + index] & 0xFF;
+		}
+		return bytes.get(index) & 0xFF;
+	}
+
+	@Override
+	protected String text(int from, int to) {
+		if (array != null) {
+			return new String(array, base + from, to - from, UTF8);
+		}
+		StringBuilder builder = new StringBuilder(to - from);
+		appendText(builder, from, to);
+		return builder.toString();
+	}
+
+	/**
+	 * Decodes UTF-8, malformed sequences are replaced by U+FFFD.
+	 */
+	@Override
+	protected void appendText(StringBuilder builder, int from, int to) {
+		int i = from;
+		while (i < to) {
+			int b = unit(i++);
+			if (b < 0x80) {
+				builder.append((char) b);
+				continue;
+			}
+			int extra;
+			int code;
+			if (b >= 0xF8 || b < 0xC0) {
+				builder.append('\uFFFD');
+				continue;
+			} else if (b >= 0xF0) {
+				extra = 3;
+				code = b & 0x07;
+			} else if (b >= 0xE0) {
+				extra = 2;
+				code = b & 0x0F;
+			} else {
+				extra = 1;
+				code = b & 0x1F;
+			}
+			if (i + extra > to) {
+				builder.append('\uFFFD');
+				break;
+			}
+			boolean valid = true;
+			for (int j = 0; j < extra; j++) {
+				int next = unit(i + j);
+				if ((next & 0xC0) != 0x80) {
+					valid = false;
+					break;
+				}
+				code = (code << 6) | (next & 0x3F);
+			}
+			if (!valid) {
+				builder.append('\uFFFD');
+				continue;
+			}
+			i += extra;
+			builder.appendCodePoint(code);
+		}
+	}
+
+	/**
+	 * ASCII text is viewed in place, anything else is decoded.
+	 */
+	@Override
+	protected CharSequence slice(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (unit(i) > 0x7F) {
+				return text(from, to);
+			}
+		}
+		return new Ascii(bytes, from, to);
+	}
+
+	/**
+	 * View of ASCII bytes as characters.
+	 */
+	private static final class Ascii implements CharSequence {
+		private final ByteBuffer bytes;
+		private final int from;
+		private final int to;
+
+		Ascii(ByteBuffer bytes, int from, int to) {
+			this.bytes = bytes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int length() {
+			return to - from;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= to - from) {
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			}
+			return (char) bytes.get(from + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > to - from || start > end) {
+				throw new IndexOutOfBoundsException(start + "," + end);
+			}
+			return new Ascii(bytes, from + start, from + end);
+		}
+
+		@Override
+		public String toString() {
+			if (bytes.hasArray()) {
+				return new String(bytes.array(), bytes.arrayOffset() + from, to - from, ASCII);
+			}
+			StringBuilder builder = new StringBuilder(to - from);
+			for (int i = from; i < to; i++) {
+				builder.append((char) bytes.get(i));
+			}
+			return builder.toString();
+		}
+	}
+
+	@Override
+	protected int scan(int from, int to, int quote) {
+		return JsonScanner.special(bytes, from, to, quote);
+	}
+
+	@Override
+	protected int skipSpaces(int from, int to) {
+		return JsonScanner.spaces(bytes, from, to);
+	}
+
+	@Override
+	protected boolean fill() throws IOException {
+		if (channel != null) {
+			return map();
+		}
+		if (stream == null) {
+			return false;
+		}
+		int keep = discard();
+		if (keep > 0) {
+			System.arraycopy(array, keep, array, 0, limit);
+		}
+		if (limit == array.length) {
+			byte[] larger = new byte[array.length * 2];
+			System.arraycopy(array, 0, larger, 0, limit);
+			use(ByteBuffer.wrap(larger));
+		}
+		int read = stream.read(array, limit, array.length - limit);
+		if (read < 0) {
+			// the stream belongs to the caller, it is left open
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	/**
+	 * Maps the next segment of the file, the new segment starts with
+	 * the part of the current one which is still needed. Segments
+	 * only grow when a single token does not fit into one.
+	 */
+	private boolean map() throws IOException {
+		if (offset + limit >= size) {
+			return false;
+		}
+		discard();
+		long length = Math.min(size - offset, Math.max(segment, (long) limit * 2));
+		use(channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(length, Integer.MAX_VALUE)));
+		limit = bytes.limit();
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		if (stream != null) {
+			stream.close();
+			stream = null;
+		}
+	}
+}
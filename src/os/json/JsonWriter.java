@@ -0,0 +1,472 @@
+package os.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON output. Everything is written into a single growable
+ * character buffer which is handed to the target <code>Appendable</code>
+ * whenever it fills up, so encoding never builds intermediate strings.
+ *
+ * Objects which are member values are opened lazily: their braces and the
+ * member name are only written once some content actually follows, which
+ * keeps the encoder's "skip empty objects" behaviour without buffering the
+ * whole member.
+ */
+public class JsonWriter implements Flushable, Closeable {
+
+	static final int BUFFER_SIZE = 8192;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final int OBJECT = 1;
+	private static final int ARRAY  = 2;
+
+	private final Appendable out;
+	private final Boolean formated;
+
+	private char[] buffer;
+	private int count;
+
+	// open containers, innermost last
+	private int[] kinds = new int[32];
+	private int[] members = new int[32];
+	private int[] indents = new int[32];
+	private boolean[] opened = new boolean[32];
+	private String[] names = new String[32];
+	private int depth;
+	// lowest container that still has unwritten braces or member name
+	private int pending = Integer.MAX_VALUE;
+	// the last value was an empty object which was skipped
+	private boolean skipped;
+
+	/**
+	 * Creates an in-memory writer, use <code>toString()</code>
+	 * to get the result.
+	 */
+	public JsonWriter(Boolean formated) {
+		this((Appendable) null, formated);
+	}
+
+	public JsonWriter(Appendable out, Boolean formated) {
+		this.out = out;
+		this.formated = formated;
+		this.buffer = new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * Writes through the output buffer of a mapper,
+	 * <code>out</code> may be null.
+	 */
+	JsonWriter(Appendable out, Boolean formated, JsonBuffers buffers) {
+		this.out = out;
+		this.formated = formated;
+		this.buffer = buffers.output;
+	}
+
+	/**
+	 * Writes UTF-8 encoded output to the given stream.
+	 */
+	public JsonWriter(OutputStream out, Boolean formated) {
+		this(new OutputStreamWriter(out, Charset.forName("UTF-8")), formated);
+	}
+
+	public Boolean isFormated() {
+		return formated;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		int indent = nesting();
+		if (depth > 0 && kinds[depth - 1] == ARRAY) {
+			// array elements are never skipped
+			beforeValue();
+			write('{');
+			push(OBJECT, indent, true);
+		} else {
+			push(OBJECT, indent, false);
+			if (pending > depth - 1) {
+				pending = depth - 1;
+			}
+		}
+		return this;
+	}
+
+	public JsonWriter endObject() throws IOException {
+		int i = --depth;
+		names[i] = null;
+		skipped = !opened[i];
+		if (opened[i]) {
+			if (members[i] > 0) {
+				newline();
+				indent(indents[i]);
+			}
+			write('}');
+		}
+		if (pending >= depth) {
+			pending = Integer.MAX_VALUE;
+		}
+		return this;
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		beforeValue();
+		write('[');
+		push(ARRAY, nesting(), true);
+		return this;
+	}
+
+	public JsonWriter endArray() throws IOException {
+		depth--;
+		skipped = false;
+		write(']');
+		return this;
+	}
+
+	/**
+	 * Sets the name of the next object member, the name is
+	 * written together with the first content of its value.
+	 */
+	public JsonWriter name(String name) throws IOException {
+		names[depth - 1] = name;
+		if (pending > depth - 1) {
+			pending = depth - 1;
+		}
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		beforeValue();
+		string(value);
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		beforeValue();
+		if (value == Long.MIN_VALUE) {
+			write("-9223372036854775808");
+			return this;
+		}
+		if (value < 0) {
+			write('-');
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		ensure(digits);
+		int end = count + digits;
+		for (int i = end - 1; i >= count; i--) {
+			buffer[i] = (char) ('0' + (value % 10));
+			value /= 10;
+		}
+		count = end;
+		return this;
+	}
+
+	public JsonWriter value(double value) throws IOException {
+		beforeValue();
+		write(Double.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		write(value ? "true" : "false");
+		return this;
+	}
+
+	public JsonWriter nullValue() throws IOException {
+		beforeValue();
+		write("null");
+		return this;
+	}
+
+	/**
+	 * Writes an already encoded value as is, empty values are skipped.
+	 */
+	public JsonWriter raw(CharSequence json) throws IOException {
+		if (json == null || json.length() == 0) {
+			return this;
+		}
+		beforeValue();
+		write(json);
+		return this;
+	}
+
+	/**
+	 * Writes a comment right after the last value, nothing if that value
+	 * was an empty object which was skipped.
+	 */
+	public JsonWriter comment(String text) throws IOException {
+		if (skipped) {
+			return this;
+		}
+		flushPending();
+		write("/*");
+		write(text);
+		write("*/");
+		return this;
+	}
+
+	/**
+	 * Escapes a string accoding to the JSON specification
+	 * and writes it in quotes. The string is copied into the buffer as it
+	 * is; if the scanner finds characters which need escaping, the rest
+	 * is expanded in place from the back.
+	 */
+	private void string(String str) throws IOException {
+		int len = str.length();
+		ensure(len + 2);
+		buffer[count++] = '"';
+		str.getChars(0, len, buffer, count);
+		int end = count + len;
+		int first = JsonScanner.special(buffer, count, end, '"');
+		if (first < end) {
+			int extra = 0;
+			for (int i = first; i < end; i++) {
+				extra += escapes(buffer[i]);
+			}
+			if (end + extra + 1 > buffer.length) {
+				// grow without draining, the string is not complete yet
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end + extra + 1));
+			}
+			int to = end + extra;
+			for (int i = end - 1; i >= first; i--) {
+				char ch = buffer[i];
+				switch (ch) {
+					case '"': // quotation mark
+						buffer[--to] = '"';
+						buffer[--to] = '\\';
+						break;
+					case '\\': // reverse solidus
+						buffer[--to] = '\\';
+						buffer[--to] = '\\';
+						break;
+					case '\b': // bell
+						buffer[--to] = 'b';
+						buffer[--to] = '\\';
+						break;
+					case '\f': // form feed
+						buffer[--to] = 'f';
+						buffer[--to] = '\\';
+						break;
+					case '\n': // newline
+						buffer[--to] = 'n';
+						buffer[--to] = '\\';
+						break;
+					case '\r': // carriage return
+						buffer[--to] = 'r';
+						buffer[--to] = '\\';
+						break;
+					case '\t': // horizontal tab
+						buffer[--to] = 't';
+						buffer[--to] = '\\';
+						break;
+					default:
+						if (ch >= ' ') {
+							// no need to do any special encoding, just pass-through
+							buffer[--to] = ch;
+							break;
+						}
+						// control character, escape as unicode with 4 hex digits
+						buffer[--to] = HEX[ch & 0xF];
+						buffer[--to] = HEX[ch >> 4];
+						buffer[--to] = '0';
+						buffer[--to] = '0';
+						buffer[--to] = 'u';
+						buffer[--to] = '\\';
+				}
+			}
+			end += extra;
+		}
+		count = end;
+		buffer[count++] = '"';
+	}
+
+	/**
+	 * Number of characters an escape adds to the character.
+	 */
+	private static int escapes(char ch) {
+		if (ch >= ' ') {
+			return ch == '"' || ch == '\\' ? 1 : 0;
+		}
+		switch (ch) {
+			case '\b':
+			case '\f':
+			case '\n':
+			case '\r':
+			case '\t':
+				return 1;
+			default:
+				return 5;
+		}
+	}
+
+	private void push(int kind, int indent, boolean open) {
+		if (depth == kinds.length) {
+			int size = depth * 2;
+			kinds = Arrays.copyOf(kinds, size);
+			members = Arrays.copyOf(members, size);
+			indents = Arrays.copyOf(indents, size);
+			opened = Arrays.copyOf(opened, size);
+			names = Arrays.copyOf(names, size);
+		}
+		kinds[depth] = kind;
+		members[depth] = 0;
+		indents[depth] = indent;
+		opened[depth] = open;
+		names[depth] = null;
+		depth++;
+	}
+
+	/**
+	 * Indentation level of a new container, only objects indent.
+	 */
+	private int nesting() {
+		if (depth == 0) {
+			return 0;
+		}
+		return kinds[depth - 1] == OBJECT ? indents[depth - 1] + 1 : indents[depth - 1];
+	}
+
+	private void beforeValue() throws IOException {
+		skipped = false;
+		flushPending();
+		if (depth > 0 && kinds[depth - 1] == ARRAY) {
+			if (members[depth - 1]++ > 0) {
+				write(',');
+			}
+		}
+	}
+
+	/**
+	 * Writes braces and member names which were held back
+	 * until the first real content of their value.
+	 */
+	private void flushPending() throws IOException {
+		if (pending >= depth) {
+			return;
+		}
+		for (int i = pending; i < depth; i++) {
+			if (!opened[i]) {
+				write('{');
+				opened[i] = true;
+			}
+			if (names[i] != null) {
+				if (members[i]++ > 0) {
+					write(',');
+				}
+				newline();
+				indent(indents[i] + 1);
+				string(names[i]);
+				write(':');
+				names[i] = null;
+			}
+		}
+		pending = Integer.MAX_VALUE;
+	}
+
+	private void newline() throws IOException {
+		if (formated) {
+			write('\n');
+		}
+	}
+
+	private void indent(int level) throws IOException {
+		if (formated) {
+			for (int i = 0; i < level; i++) {
+				write("  ");
+			}
+		}
+	}
+
+	private void write(char ch) throws IOException {
+		if (count == buffer.length) {
+			ensure(1);
+		}
+		buffer[count++] = ch;
+	}
+
+	private void write(CharSequence str) throws IOException {
+		int len = str.length();
+		ensure(len);
+		if (str instanceof String) {
+			((String) str).getChars(0, len, buffer, count);
+			count += len;
+		} else {
+			for (int i = 0; i < len; i++) {
+				buffer[count++] = str.charAt(i);
+			}
+		}
+	}
+
+	/**
+	 * Makes room for <code>size</code> more characters, either
+	 * by handing the buffer to the output or by growing it.
+	 */
+	private void ensure(int size) throws IOException {
+		if (count + size <= buffer.length) {
+			return;
+		}
+		if (out != null) {
+			drain();
+			if (size <= buffer.length) {
+				return;
+			}
+		}
+		buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + size));
+	}
+
+	private void drain() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		if (out instanceof Writer) {
+			((Writer) out).write(buffer, 0, count);
+		} else if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(buffer, 0, count);
+		} else {
+			out.append(CharBuffer.wrap(buffer, 0, count));
+		}
+		count = 0;
+	}
+
+	/**
+	 * Hands everything written so far to the output.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			drain();
+			if (out instanceof Flushable) {
+				((Flushable) out).flush();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		if (out instanceof Closeable) {
+			((Closeable) out).close();
+		}
+	}
+
+	/**
+	 * Returns the output of an in-memory writer.
+	 */
+	@Override
+	public String toString() {
+		return new String(buffer, 0, count);
+	}
+}
@@ -0,0 +1,104 @@
+package os.json.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of <code>double</code> values stored in an array without
+ * boxing. The decoder reads numeric arrays into it directly; as a
+ * <code>List&lt;Double&gt;</code> it boxes only the values accessed
+ * through the list methods.
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+	private double[] values;
+	private int size;
+
+	public DoubleList() {
+		this(16);
+	}
+
+	public DoubleList(int capacity) {
+		values = new double[Math.max(1, capacity)];
+	}
+
+	public DoubleList(double[] values) {
+		this.values = values.length == 0 ? new double[1] : values.clone();
+		this.size = values.length;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public double getDouble(int index) {
+		check(index);
+		return values[index];
+	}
+
+	public double setDouble(int index, double value) {
+		check(index);
+		double old = values[index];
+		values[index] = value;
+		return old;
+	}
+
+	public void addDouble(double value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Copy of the values.
+	 */
+	public double[] toDoubleArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	@Override
+	public Double get(int index) {
+		return getDouble(index);
+	}
+
+	@Override
+	public Double set(int index, Double value) {
+		return setDouble(index, value);
+	}
+
+	@Override
+	public void add(int index, Double value) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		addDouble(value);
+		System.arraycopy(values, index, values, index + 1, size - index - 1);
+		values[index] = value;
+		modCount++;
+	}
+
+	@Override
+	public Double remove(int index) {
+		check(index);
+		double old = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package os.json.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of <code>int</code> values stored in an array without
+ * boxing. The decoder reads numeric arrays into it directly; as a
+ * <code>List&lt;Integer&gt;</code> it boxes only the values accessed
+ * through the list methods.
+ */
+public final class IntList extends AbstractList<Integer> implements RandomAccess {
+
+	private int[] values;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int capacity) {
+		values = new int[Math.max(1, capacity)];
+	}
+
+	public IntList(int[] values) {
+		this.values = values.length == 0 ? new int[1] : values.clone();
+		this.size = values.length;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int getInt(int index) {
+		check(index);
+		return values[index];
+	}
+
+	public int setInt(int index, int value) {
+		check(index);
+		int old = values[index];
+		values[index] = value;
+		return old;
+	}
+
+	public void addInt(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Copy of the values.
+	 */
+	public int[] toIntArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	@Override
+	public Integer get(int index) {
+		return getInt(index);
+	}
+
+	@Override
+	public Integer set(int index, Integer value) {
+		return setInt(index, value);
+	}
+
+	@Override
+	public void add(int index, Integer value) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		addInt(value);
+		System.arraycopy(values, index, values, index + 1, size - index - 1);
+		values[index] = value;
+		modCount++;
+	}
+
+	@Override
+	public Integer remove(int index) {
+		check(index);
+		int old = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
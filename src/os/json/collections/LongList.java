@@ -0,0 +1,104 @@
+package os.json.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of <code>long</code> values stored in an array without
+ * boxing. The decoder reads numeric arrays into it directly; as a
+ * <code>List&lt;Long&gt;</code> it boxes only the values accessed
+ * through the list methods.
+ */
+public final class LongList extends AbstractList<Long> implements RandomAccess {
+
+	private long[] values;
+	private int size;
+
+	public LongList() {
+		this(16);
+	}
+
+	public LongList(int capacity) {
+		values = new long[Math.max(1, capacity)];
+	}
+
+	public LongList(long[] values) {
+		this.values = values.length == 0 ? new long[1] : values.clone();
+		this.size = values.length;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public long getLong(int index) {
+		check(index);
+		return values[index];
+	}
+
+	public long setLong(int index, long value) {
+		check(index);
+		long old = values[index];
+		values[index] = value;
+		return old;
+	}
+
+	public void addLong(long value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Copy of the values.
+	 */
+	public long[] toLongArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	@Override
+	public Long get(int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(int index, Long value) {
+		return setLong(index, value);
+	}
+
+	@Override
+	public void add(int index, Long value) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		addLong(value);
+		System.arraycopy(values, index, values, index + 1, size - index - 1);
+		values[index] = value;
+		modCount++;
+	}
+
+	@Override
+	public Long remove(int index) {
+		check(index);
+		long old = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import model.Money;
+import model.Stats;
+
+import org.junit.Test;
+
+import os.json.JSON;
+import os.json.JsonBinding;
+import os.json.JsonMapper;
+import os.json.collections.IntList;
+
+
+
+public class EncoderTest {
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Named {
+		String value();
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Marker {
+	}
+
+	@Named("n")
+	@Marker
+	private static class Annotated {
+	}
+
+	private Map<String,Object> document(){
+		Map<String,Object> nested = new LinkedHashMap<String,Object>();
+		nested.put("list", Arrays.asList(1,2.5,"z"));
+		nested.put("empty", new HashMap<String,Object>());
+		Map<String,Object> document = new LinkedHashMap<String,Object>();
+		document.put("id", "U1");
+		document.put("text", "a\"b\n");
+		document.put("nested", nested);
+		document.put("none", new ArrayList<Object>());
+		return document;
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		assertEquals(
+			"{\"id\":\"U1\",\"text\":\"a\\\"b\\n\",\"nested\":{\"list\":[1,2.5,\"z\"]},\"none\":[]}",
+			JSON.encode(document())
+		);
+	}
+
+	@Test
+	public void testFormated() throws Exception {
+		assertEquals(
+			"{\n  \"id\":\"U1\",\n  \"text\":\"a\\\"b\\n\",\n  \"nested\":{\n    \"list\":[1,2.5,\"z\"]\n  },\n  \"none\":[]\n}",
+			JSON.encode(document(),true)
+		);
+	}
+
+	@Test
+	public void testStreaming() throws Exception {
+		StringWriter writer = new StringWriter();
+		JSON.encode(document(), writer, true);
+		assertEquals(JSON.encode(document(),true), writer.toString());
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		JSON.encode(document(), stream);
+		assertEquals(JSON.encode(document()), stream.toString("UTF-8"));
+	}
+
+	@Test
+	public void testCommentedAnnotations() throws Exception {
+		String marker = JSON.encode(Annotated.class.getAnnotation(Marker.class), false, true);
+		assertTrue(marker.matches("\"true\"/\\*.+\\*/"));
+		String named = JSON.encode(Annotated.class.getAnnotation(Named.class), false, true);
+		assertTrue(named.matches("\\{\"value\":\"n\"/\\*String\\*/\\}/\\*.+\\*/"));
+	}
+
+	@Test
+	public void testCommentedEmptyObjects() throws Exception {
+		Map<String,Object> document = new LinkedHashMap<String,Object>();
+		document.put("a", 1);
+		document.put("b", new HashMap<String,Object>());
+		assertEquals("{\"a\":1/*Integer*/}/*LinkedHashMap*/", JSON.encode(document, false, true));
+		document.put("c", Arrays.asList(new HashMap<String,Object>()));
+		assertEquals("{\"a\":1/*Integer*/,\"c\":[{}/*HashMap*/]/*ArrayList*/}/*LinkedHashMap*/", JSON.encode(document, false, true));
+	}
+
+	@Test
+	public void testStreamEncodable() throws Exception {
+		Map<String,Object> document = new LinkedHashMap<String,Object>();
+		document.put("price", new Money(new BigDecimal("12.50"), "EUR"));
+		assertEquals("{\"price\":{\"amount\":12.50,\"currency\":\"EUR\"}}", JSON.encode(document));
+		assertEquals("{\n  \"price\":{\n    \"amount\":12.50,\n    \"currency\":\"EUR\"\n  }\n}", JSON.encode(document, true));
+	}
+
+	@Test
+	public void testPrimitiveArrays() throws Exception {
+		assertEquals("[1,-2,9223372036854775807]", JSON.encode(new long[]{1, -2, Long.MAX_VALUE}));
+		assertEquals("[[1,2],[0.5]]", JSON.encode(Arrays.asList(new int[]{1, 2}, new double[]{0.5})));
+		assertEquals("[\"a\",null]", JSON.encode(new String[]{"a", null}));
+		IntList list = new IntList();
+		list.addInt(7);
+		list.add(8);
+		assertEquals("[7,8]", JSON.encode(list));
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		Path file = Files.createTempFile("async", ".json");
+		try {
+			List<Object> document = new ArrayList<Object>();
+			for (int i = 0; i < 20000; i++) {
+				document.add("value " + i);
+			}
+			JSON.encodeAsync(document, file).get();
+			assertEquals(JSON.encode(document), new String(Files.readAllBytes(file), "UTF-8"));
+			assertEquals(document, JSON.decodeAsync(file, ArrayList.class).get());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testEscapes() throws Exception {
+		String text = "plain \"quoted\" back\\slash\ttab\u0001 \u00e9\n";
+		assertEquals("[\"plain \\\"quoted\\\" back\\\\slash\\ttab\\u0001 \u00e9\\n\"]", JSON.encode(Arrays.asList(text)));
+		assertEquals(Arrays.asList(text), JSON.decode(JSON.encode(Arrays.asList(text)).getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testMapper() throws Exception {
+		final JsonMapper mapper = new JsonMapper();
+		final String expected = mapper.encode(document());
+		final Map<String,Object> reference = mapper.decode(expected, null);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 1000; i++) {
+							assertEquals(reference, mapper.decode(expected, null));
+							assertEquals(expected, mapper.encode(document()));
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), failures);
+	}
+
+	@Test
+	public void testBean() throws Exception {
+		Stats stats = new Stats();
+		stats.setName("requests");
+		stats.setCount(3);
+		stats.setTotal(10000000000L);
+		stats.setAverage(2.5);
+		stats.setActive(true);
+		stats.setCache("skipped");
+		String json = JSON.encode(stats);
+		assertFalse(json.contains("cache"));
+
+		Stats decoded = JSON.decode(json, Stats.class);
+		assertEquals("requests", decoded.getName());
+		assertEquals(3, decoded.getCount());
+		assertEquals(10000000000L, decoded.getTotal());
+		assertEquals(2.5, decoded.getAverage(), 0);
+		assertTrue(decoded.getActive());
+		assertNull(decoded.getCache());
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testBinding() throws Exception {
+		// runs the processor on a bean and binds it through the generated class
+		Path dir = Files.createTempDirectory("binding");
+		Path source = dir.resolve("bound/Bean.java");
+		Files.createDirectories(source.getParent());
+		Files.write(source, (
+			"package bound;\n" +
+			"@os.json.annotations.JsonBean\n" +
+			"public class Bean {\n" +
+			"	private int count; private long total; private double ratio; private boolean active;\n" +
+			"	private String name; private java.util.ArrayList<String> tags; private String cache;\n" +
+			"	public int getCount() { return count; } public void setCount(int count) { this.count = count; }\n" +
+			"	public long getTotal() { return total; } public void setTotal(long total) { this.total = total; }\n" +
+			"	public double getRatio() { return ratio; } public void setRatio(double ratio) { this.ratio = ratio; }\n" +
+			"	public boolean isActive() { return active; } public void setActive(boolean active) { this.active = active; }\n" +
+			"	public String getName() { return name; } public void setName(String name) { this.name = name; }\n" +
+			"	public java.util.ArrayList<String> getTags() { return tags; } public void setTags(java.util.ArrayList<String> tags) { this.tags = tags; }\n" +
+			"	@os.json.annotations.JsonIgnore public String getCache() { return cache; } public void setCache(String cache) { this.cache = cache; }\n" +
+			"}\n").getBytes("UTF-8"));
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, "-d", dir.toString(),
+				"processor/src/os/json/processor/JsonBindingProcessor.java"));
+		assertEquals(0, compiler.run(null, null, null, "-d", dir.toString(),
+				"-cp", System.getProperty("java.class.path"),
+				"-processorpath", dir.toString(), "-processor", "os.json.processor.JsonBindingProcessor",
+				source.toString()));
+		URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, getClass().getClassLoader());
+		try {
+			Class<?> type = loader.loadClass("bound.Bean");
+			JsonBinding binding = (JsonBinding) loader.loadClass("bound.Bean_JsonBinding").getDeclaredConstructor().newInstance();
+			List<String> names = Arrays.asList(binding.names());
+			assertTrue(binding.ignored()[names.indexOf("cache")]);
+			assertEquals(long.class, binding.types()[names.indexOf("total")]);
+
+			Object bean = JSON.decode("{\"count\":3,\"total\":10000000000,\"ratio\":2.5,\"active\":true,"
+					+ "\"name\":\"a\",\"tags\":[\"x\",\"y\"],\"cache\":\"c\"}", type);
+			assertEquals(type, bean.getClass());
+			assertEquals(3, binding.get(bean, names.indexOf("count")));
+			assertEquals(10000000000L, binding.get(bean, names.indexOf("total")));
+			assertEquals(2.5, binding.get(bean, names.indexOf("ratio")));
+			assertEquals(true, binding.get(bean, names.indexOf("active")));
+			assertEquals("a", binding.get(bean, names.indexOf("name")));
+			assertEquals(Arrays.asList("x", "y"), binding.get(bean, names.indexOf("tags")));
+
+			binding.set(bean, names.indexOf("count"), 4);
+			binding.set(bean, names.indexOf("cache"), "d");
+			Map<String, Object> encoded = JSON.decode(JSON.encode(bean));
+			assertEquals(4, ((Number) encoded.get("count")).intValue());
+			assertEquals(10000000000L, ((Number) encoded.get("total")).longValue());
+			assertEquals("a", encoded.get("name"));
+			assertEquals(Arrays.asList("x", "y"), encoded.get("tags"));
+			assertFalse(encoded.containsKey("cache"));
+		} finally {
+			loader.close();
+			List<Path> files = Files.walk(dir).collect(Collectors.<Path>toList());
+			Collections.reverse(files);
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+	}
+}
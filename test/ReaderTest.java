@@ -0,0 +1,524 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import model.Money;
+import model.User;
+
+import org.junit.Test;
+
+import os.json.JSON;
+import os.json.JsonDecoder;
+import os.json.JsonIndex;
+import os.json.JsonLines;
+import os.json.JsonLiterals;
+import os.json.JsonMapper;
+import os.json.JsonNames;
+import os.json.JsonParseError;
+import os.json.JsonPaths;
+import os.json.JsonPublisher;
+import os.json.JsonPushParser;
+import os.json.JsonReader;
+import os.json.JsonToken;
+import os.json.JsonTokenizer;
+import os.json.collections.DoubleList;
+
+
+
+public class ReaderTest {
+
+	@Test
+	public void testPull() throws Exception {
+		JsonReader reader = new JsonReader(new StringReader("{\"a\":{\"b\":[1,{\"c\":2}]},\"d\":5, e:[true,null]}"));
+		reader.beginObject();
+		assertEquals("a", reader.nextName());
+		reader.skipValue();
+		assertEquals("d", reader.nextName());
+		assertEquals(5, reader.nextLong());
+		assertEquals("e", reader.nextName());
+		reader.beginArray();
+		assertTrue(reader.nextBoolean());
+		assertEquals(JsonToken.Type.NULL, reader.peek());
+		reader.nextNull();
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		reader.endObject();
+		assertNull(reader.peek());
+	}
+
+	@Test
+	public void testCursor() throws Exception {
+		JsonTokenizer tokenizer = new JsonTokenizer("[ -123456789012, 2.5e1, \"x\", true ]");
+		assertEquals(JsonToken.Type.LEFT_BRACKET, tokenizer.next());
+		assertEquals(JsonToken.Type.NUMBER, tokenizer.next());
+		assertTrue(tokenizer.isIntegral());
+		assertEquals(-123456789012L, tokenizer.getLong());
+		assertEquals(2, tokenizer.getTokenStart());
+		assertEquals(15, tokenizer.getTokenEnd());
+		tokenizer.next();
+		tokenizer.next();
+		assertFalse(tokenizer.isIntegral());
+		assertEquals(25.0, tokenizer.getDouble(), 0);
+		tokenizer.next();
+		tokenizer.next();
+		assertEquals(JsonToken.Type.STRING, tokenizer.getType());
+		assertEquals(24, tokenizer.getTokenStart());
+		assertEquals("x", tokenizer.getString());
+		tokenizer.next();
+		tokenizer.next();
+		assertTrue(tokenizer.getBoolean());
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		JsonReader reader = new JsonReader("[-9223372036854775808, 0.1, 1e-7, 12345678901234567890, 19.99000000000000000001]");
+		reader.beginArray();
+		assertEquals(Long.MIN_VALUE, reader.nextLong());
+		assertEquals(0.1, reader.nextDouble(), 0);
+		assertEquals(1e-7, reader.nextDouble(), 0);
+		assertEquals(new BigInteger("12345678901234567890"), reader.nextBigInteger());
+		assertEquals(new BigDecimal("19.99000000000000000001"), reader.nextBigDecimal());
+		reader.endArray();
+	}
+
+	@Test
+	public void testExactLongs() throws Exception {
+		assertEquals(Long.valueOf(12345678901234567L), JSON.decode("12345678901234567.0", Long.class));
+		assertEquals(Long.valueOf(1500), JSON.decode("1.5e3", Long.class));
+		assertTrue(Arrays.equals(new long[]{12345678901234567L}, JSON.decode("[12345678901234567.0]", long[].class)));
+		try {
+			JSON.decode("9223372036854775808.0", Long.class);
+			fail("Expecting a parse error");
+		} catch (JsonParseError e) {
+			assertEquals("Expecting long but found 9223372036854775808.0", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNames() throws Exception {
+		String[] list = new String[200];
+		StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < list.length; i++) {
+			list[i] = "member" + i;
+			json.append(i > 0 ? "," : "").append('"').append(list[i]).append("\":").append(i);
+		}
+		JsonNames names = new JsonNames(list);
+		JsonReader reader = new JsonReader(json.append(",\"other\":0}").toString());
+		reader.beginObject();
+		for (int i = 0; i < list.length; i++) {
+			assertEquals(i, names.indexOf(list[i]));
+			assertEquals(i, reader.nextName(names));
+			assertEquals(i, reader.nextInt());
+		}
+		assertEquals(-1, reader.nextName(names));
+		assertEquals(-1, names.indexOf("other"));
+	}
+
+	@Test
+	public void testSymbols() throws Exception {
+		JsonReader reader = new JsonReader("[{\"platform\":\"FB\"},{\"platform\":\"FB\"},{\"platform\":\"VK\"}]");
+		List<Map<String,Object>> list = new JsonDecoder().decode(reader, null);
+		assertSame(list.get(0).get("platform"), list.get(1).get("platform"));
+		assertEquals("VK", list.get(2).get("platform"));
+		assertEquals(3, reader.getSymbols().getHits());
+		assertEquals(3, reader.getSymbols().getMisses());
+	}
+
+	@Test
+	public void testLiterals() throws Exception {
+		JsonLiterals literals = new JsonLiterals();
+		literals.register("Id", StringBuilder.class);
+		JsonTokenizer tokenizer = new JsonTokenizer("[Id(\"a1\"), Id( b2 ), Ids(c3)]");
+		tokenizer.setLiterals(literals);
+		List<Object> list = new JsonDecoder().decode(new JsonReader(tokenizer), null);
+		assertTrue(list.get(0) instanceof StringBuilder);
+		assertEquals("a1", list.get(0).toString());
+		assertEquals("b2", list.get(1).toString());
+		assertEquals("Ids(c3)", list.get(2));
+	}
+
+	@Test
+	public void testLiteralsAcrossChunks() throws Exception {
+		JsonLiterals literals = new JsonLiterals();
+		literals.register("Id", StringBuilder.class);
+		// moves the literals across the end of the first 8K buffer
+		for (int padding = 8140; padding < 8200; padding++) {
+			char[] pad = new char[padding];
+			Arrays.fill(pad, 'x');
+			String document = "{\"pad\":\"" + new String(pad) + "\",\"id\":Id(  \"abc\"  ),\"raw\":Id(  b2  )}";
+			JsonTokenizer tokenizer = new JsonTokenizer(new StringReader(document));
+			tokenizer.setLiterals(literals);
+			JsonReader reader = new JsonReader(tokenizer);
+			reader.beginObject();
+			reader.nextName();
+			reader.skipValue();
+			assertEquals("id", reader.nextName());
+			assertEquals("abc", reader.nextValue().toString());
+			assertEquals("raw", reader.nextName());
+			assertEquals("b2", reader.nextValue().toString());
+			reader.endObject();
+		}
+	}
+
+	@Test
+	public void testChunks() throws Exception {
+		StringBuilder document = new StringBuilder("[");
+		for (int i = 0; i < 10000; i++) {
+			document.append(i > 0 ? "," : "").append("{\"key\":\"value\\\"").append(i).append("\"}");
+		}
+		document.append("]");
+		List<Map<String,Object>> list = JSON.decode(new StringReader(document.toString()));
+		assertEquals(10000, list.size());
+		assertEquals("value\"9999", list.get(9999).get("key"));
+	}
+
+	@Test
+	public void testBorrowedInputs() throws Exception {
+		final boolean[] closed = new boolean[2];
+		InputStream stream = new ByteArrayInputStream("[1,2]".getBytes("UTF-8")) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		StringReader reader = new StringReader("[1,2]") {
+			@Override
+			public void close() {
+				closed[1] = true;
+			}
+		};
+		assertEquals(2, JSON.<List<Object>>decode(stream).size());
+		assertEquals(2, JSON.<List<Object>>decode(reader).size());
+		assertFalse(closed[0]);
+		assertFalse(closed[1]);
+	}
+
+	@Test
+	public void testUtf8() throws Exception {
+		byte[] document = "{\"id\":\"\u00fc\u20ac\",\"email\":\"e\\u00e9\",\"extra\":[1,{\"a\":\"}\"}]}".getBytes("UTF-8");
+		User user = JSON.decode(document, User.class);
+		assertEquals("\u00fc\u20ac", user.getId());
+		assertEquals("e\u00e9", user.getEmail());
+		user = JSON.decode(ByteBuffer.wrap(document), User.class);
+		assertEquals("\u00fc\u20ac", user.getId());
+	}
+
+	@Test
+	public void testMapped() throws Exception {
+		User user = JSON.decodeMapped(new File("data/test-user.json"), User.class);
+		assertEquals("U1", user.getId());
+		assertEquals(3, user.getInbox().size());
+	}
+
+	@Test
+	public void testLines() throws Exception {
+		StringBuilder document = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			document.append("{\"id\":\"U").append(i).append("\"}").append(i == 100 ? "\n{bad\r\n\n" : "\n");
+		}
+		final List<String> malformed = new ArrayList<String>();
+		JsonLines<User> lines = new JsonLines<User>(User.class);
+		lines.setBlockSize(1024);
+		lines.setErrors(new JsonLines.Errors() {
+			@Override
+			public synchronized void malformed(long offset, String line, JsonParseError error) {
+				malformed.add(line);
+			}
+		});
+		List<User> users = lines.stream(new ByteArrayInputStream(document.toString().getBytes("UTF-8"))).collect(Collectors.<User>toList());
+		assertEquals(5000, users.size());
+		assertEquals("U4999", users.get(4999).getId());
+		assertEquals(Arrays.asList("{bad"), malformed);
+	}
+
+	@Test
+	public void testLinesReadAhead() throws Exception {
+		final byte[] line = "{\"id\":\"U1\"}\n".getBytes("UTF-8");
+		final long[] read = {0};
+		InputStream in = new InputStream() {
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+			@Override
+			public synchronized int read(byte[] bytes, int offset, int length) {
+				long left = 150000L * line.length - read[0];
+				if (left == 0) {
+					return -1;
+				}
+				length = (int) Math.min(length, left);
+				for (int i = 0; i < length; i++) {
+					bytes[offset + i] = line[(int) ((read[0] + i) % line.length)];
+				}
+				read[0] += length;
+				return length;
+			}
+		};
+		final long[] lead = {0, 0};
+		JsonLines<User> lines = new JsonLines<User>(User.class);
+		lines.setBlockSize(1024);
+		lines.setPool(new ForkJoinPool(2));
+		lines.decode(in, new JsonLines.Batch<User>() {
+			@Override
+			public synchronized void decoded(List<User> values) {
+				lead[0] += values.size() * line.length;
+				synchronized (in) {
+					lead[1] = Math.max(lead[1], read[0] - lead[0]);
+				}
+			}
+		});
+		// a window of blocks, not the whole input
+		assertTrue(lead[1] < 32 * 1024);
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		File file = File.createTempFile("stream", ".json");
+		file.deleteOnExit();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		out.write("[");
+		for (int i = 0; i < 20000; i++) {
+			out.write((i > 0 ? "," : "") + "{\"id\":\"U" + i + "\",\"email\":\"],}\\\"\"}");
+		}
+		out.write("]");
+		out.close();
+		Stream<User> stream = JSON.stream(file, User.class);
+		List<User> users = stream.parallel().collect(Collectors.<User>toList());
+		stream.close();
+		assertEquals(20000, users.size());
+		assertEquals("U12345", users.get(12345).getId());
+		assertEquals("],}\"", users.get(0).getEmail());
+	}
+
+	@Test
+	public void testStreamBrackets() throws Exception {
+		String[] documents = {"[1}", "[{\"a\":1]]", "[[1,{}],\"]\"}"};
+		int[] locations = {2, 7, 11};
+		for (int i = 0; i < documents.length; i++) {
+			File file = File.createTempFile("brackets", ".json");
+			file.deleteOnExit();
+			Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			out.write(documents[i]);
+			out.close();
+			try {
+				JSON.stream(file, Object.class).close();
+				fail("Expecting a parse error");
+			} catch (JsonParseError e) {
+				assertEquals(locations[i], e.getLocation());
+			}
+		}
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		JsonIndex index = new JsonIndex("{\"user\":{\"id\":\"U1\",\"mappings\":{\"FB\":{\"id\":\"f1\"}}},\"list\":[1,[2,{}],true,null,\"x\"]}".getBytes("UTF-8"));
+		int user = index.get(0, "user");
+		int mappings = index.get(user, "mappings");
+		assertEquals("f1", index.getString(index.get(index.get(mappings, "FB"), "id")));
+		assertEquals(-1, index.get(user, "other"));
+		int list = index.get(0, "list");
+		assertEquals(5, index.length(list));
+		assertEquals(1, index.getInt(index.get(list, 0)));
+		assertEquals("[2,{}]", index.getRaw(index.get(list, 1)));
+		assertTrue(index.getBoolean(index.get(list, 2)));
+		assertTrue(index.isNull(index.get(list, 3)));
+		assertEquals(-1, index.get(list, 5));
+		Map<String,Object> decoded = index.decode(mappings, null);
+		assertEquals("f1", ((Map<?,?>) decoded.get("FB")).get("id"));
+	}
+
+	@Test
+	public void testExtract() throws Exception {
+		String document = "{\"user\":{\"id\":\"U1\",\"mappings\":{\"FB\":{\"id\":\"f1\"},\"a/b\":2}},\"list\":[1,[2,{\"x\":9}]],\"rest\":[}";
+		assertEquals("f1", JSON.extract(document, "/user/mappings/FB/id", String.class));
+		assertEquals(Long.valueOf(9), JSON.extract(document, "/list/1/1/x", Long.class));
+		assertEquals(Integer.valueOf(2), JSON.extract(document.getBytes("UTF-8"), "/user/mappings/a~1b", Integer.class));
+		assertNull(JSON.extract("{\"list\":[1]}", "/list/1", Object.class));
+		Object[] values = new JsonPaths("/list/0", "/user/id").extract(document);
+		assertEquals(1.0, values[0]);
+		assertEquals("U1", values[1]);
+	}
+
+	@Test
+	public void testSkip() throws Exception {
+		User user = JSON.decode("{\"other\":{\"a\":[1,\"]}\\\"\",{'b':\"[\"}] /* ] */},\"id\":\"U1\",\"more\":[[],{}]}", User.class);
+		assertEquals("U1", user.getId());
+		JsonTokenizer tokenizer = new JsonTokenizer("[{\"x\":\"}\"},2] 3");
+		tokenizer.next();
+		tokenizer.skipValue();
+		assertEquals(JsonToken.Type.RIGHT_BRACKET, tokenizer.getType());
+		assertEquals(JsonToken.Type.NUMBER, tokenizer.next());
+	}
+
+	@Test
+	public void testRaw() throws Exception {
+		String document = "{\"price\":{\"amount\":12.50,\"note\":{\"a\":\"}\"},\"currency\":\"EUR\"},\"raw\":{\"x\":\"]}\"} }";
+		JsonReader reader = new JsonReader(document.getBytes("UTF-8"));
+		reader.beginObject();
+		assertEquals("price", reader.nextName());
+		Money price = new JsonDecoder().read(reader, Money.class);
+		assertEquals(new BigDecimal("12.50"), price.getAmount());
+		assertEquals("EUR", price.getCurrency());
+		assertEquals("raw", reader.nextName());
+		assertEquals("{\"x\":\"]}\"}", reader.nextRaw().toString());
+		reader.endObject();
+		reader = new JsonReader(new StringReader("[\"a\",{\"b\":[1]}]"));
+		reader.beginArray();
+		assertEquals("\"a\"", reader.nextRaw().toString());
+		assertEquals("{\"b\":[1]}", reader.nextRaw().toString());
+		reader.endArray();
+	}
+
+	@Test
+	public void testPush() throws Exception {
+		final List<User> users = new ArrayList<User>();
+		JsonPushParser<User> parser = new JsonPushParser<User>(User.class, new JsonPushParser.Values<User>() {
+			@Override
+			public void decoded(User user) {
+				users.add(user);
+			}
+		});
+		parser.setElements(true);
+		byte[] document = "[{\"id\":\"U1\",\"other\":\"]}\"}, /* , */ {\"id\":\"\u00e9t\u00e9\"}]".getBytes("UTF-8");
+		// the first user is decoded as soon as its closing brace arrives
+		int first = new String(document, "UTF-8").indexOf("\"}") + 1;
+		for (int i = 0; i < document.length; i += 3) {
+			parser.feed(ByteBuffer.wrap(document, i, Math.min(3, document.length - i)));
+			assertEquals(i + 3 <= first ? 0 : 1, Math.min(users.size(), 1));
+		}
+		parser.end();
+		assertEquals(2, users.size());
+		assertEquals("U1", users.get(0).getId());
+		assertEquals("\u00e9t\u00e9", users.get(1).getId());
+	}
+	
+	@Test
+	public void testPushLiterals() throws Exception {
+		JsonLiterals literals = new JsonLiterals();
+		literals.register("Id", StringBuilder.class);
+		byte[] document = "[Id(\"a\"), Id( 'b)' ),Id(c)]".getBytes("UTF-8");
+		for (int size = 1; size <= 3; size++) {
+			final List<Object> values = new ArrayList<Object>();
+			JsonPushParser<Object> parser = new JsonPushParser<Object>(null, new JsonPushParser.Values<Object>() {
+				@Override
+				public void decoded(Object value) {
+					values.add(value.toString());
+				}
+			});
+			parser.setMapper(new JsonMapper(false, false, literals));
+			parser.setElements(true);
+			for (int i = 0; i < document.length; i += size) {
+				parser.feed(ByteBuffer.wrap(document, i, Math.min(size, document.length - i)));
+			}
+			parser.end();
+			assertEquals(Arrays.asList("a", "b)", "c"), values);
+		}
+	}
+
+	@Test
+	public void testPublisher() throws Exception {
+		final List<Object> values = new ArrayList<Object>();
+		final Flow.Subscription[] subscription = new Flow.Subscription[1];
+		JsonPublisher<User> publisher = new JsonPublisher<User>(new ByteArrayInputStream("[{\"id\":\"U1\"},{\"id\":\"U2\"}]".getBytes("UTF-8")), User.class);
+		publisher.setExecutor(new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				task.run();
+			}
+		});
+		publisher.subscribe(new Flow.Subscriber<User>() {
+			@Override
+			public void onSubscribe(Flow.Subscription s) {
+				subscription[0] = s;
+			}
+			@Override
+			public void onNext(User user) {
+				values.add(user.getId());
+			}
+			@Override
+			public void onError(Throwable error) {
+				values.add(error);
+			}
+			@Override
+			public void onComplete() {
+				values.add("done");
+			}
+		});
+		assertTrue(values.isEmpty());
+		subscription[0].request(1);
+		assertEquals(Arrays.asList("U1"), values);
+		subscription[0].request(5);
+		assertEquals(Arrays.asList("U1", "U2", "done"), values);
+	}
+
+	@Test
+	public void testPublisherNulls() throws Exception {
+		final List<Object> values = new ArrayList<Object>();
+		JsonPublisher<Object> publisher = new JsonPublisher<Object>(new ByteArrayInputStream("[1,null,2]".getBytes("UTF-8")), null);
+		publisher.setExecutor(new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				task.run();
+			}
+		});
+		publisher.subscribe(new Flow.Subscriber<Object>() {
+			@Override
+			public void onSubscribe(Flow.Subscription s) {
+				s.request(10);
+			}
+			@Override
+			public void onNext(Object value) {
+				values.add(value);
+			}
+			@Override
+			public void onError(Throwable error) {
+				values.add(error);
+			}
+			@Override
+			public void onComplete() {
+				values.add("done");
+			}
+		});
+		// nulls can't be published and are skipped
+		assertEquals(Arrays.asList((Object) 1.0, 2.0, "done"), values);
+	}
+	
+	@Test
+	public void testPrimitiveArrays() throws Exception {
+		assertTrue(Arrays.equals(new int[]{1, -2, 3}, JSON.decode("[1,-2,3]", int[].class)));
+		assertTrue(Arrays.equals(new long[]{9007199254740993L}, JSON.decode("[9007199254740993]", long[].class)));
+		assertTrue(Arrays.equals(new double[]{1.5, 2e3}, JSON.decode("[1.5,2e3]", double[].class)));
+		assertTrue(Arrays.equals(new String[]{"a", null}, JSON.decode("[\"a\",null]", String[].class)));
+		DoubleList values = JSON.decode("[0.5,2]", DoubleList.class);
+		assertEquals(2, values.size());
+		assertEquals(2.0, values.getDouble(1), 0);
+	}
+	
+	@Test(expected = JsonParseError.class)
+	public void testError() throws Exception {
+		JSON.decode("{\"a\" 1}");
+	}
+}
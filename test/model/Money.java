@@ -0,0 +1,57 @@
+package model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import os.json.JsonParseError;
+import os.json.JsonReader;
+import os.json.JsonStreamDecodable;
+import os.json.JsonStreamEncodable;
+import os.json.JsonWriter;
+
+
+public class Money implements JsonStreamDecodable, JsonStreamEncodable {
+	
+	private BigDecimal amount;
+	private String currency;
+	
+	public Money() {
+	}
+	
+	public Money(BigDecimal amount, String currency) {
+		this.amount = amount;
+		this.currency = currency;
+	}
+	
+	public BigDecimal getAmount() {
+		return amount;
+	}
+	
+	public String getCurrency() {
+		return currency;
+	}
+	
+	@Override
+	public void decodeJson(JsonReader reader) throws IOException, JsonParseError {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("amount")) {
+				amount = reader.nextBigDecimal();
+			} else if (name.equals("currency")) {
+				currency = reader.nextString();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+	
+	@Override
+	public void encodeJson(JsonWriter writer) throws IOException {
+		writer.beginObject();
+		writer.name("amount").raw(amount.toPlainString());
+		writer.name("currency").value(currency);
+		writer.endObject();
+	}
+}
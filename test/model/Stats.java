@@ -0,0 +1,69 @@
+package model;
+
+import os.json.annotations.JsonIgnore;
+import os.utils.Types.Property.Index;
+
+
+public class Stats {
+	
+	private String name;
+	private int count;
+	private long total;
+	private double average;
+	private boolean active;
+	private String cache;
+	
+	@Index(0)
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	@Index(1)
+	public int getCount() {
+		return count;
+	}
+	
+	public void setCount(int count) {
+		this.count = count;
+	}
+	
+	@Index(2)
+	public long getTotal() {
+		return total;
+	}
+	
+	public void setTotal(long total) {
+		this.total = total;
+	}
+	
+	@Index(3)
+	public double getAverage() {
+		return average;
+	}
+	
+	public void setAverage(double average) {
+		this.average = average;
+	}
+	
+	@Index(4)
+	public boolean getActive() {
+		return active;
+	}
+	
+	public void setActive(boolean active) {
+		this.active = active;
+	}
+	
+	@JsonIgnore
+	public String getCache() {
+		return cache;
+	}
+	
+	public void setCache(String cache) {
+		this.cache = cache;
+	}
+}